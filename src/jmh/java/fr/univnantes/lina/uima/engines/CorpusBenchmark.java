@@ -0,0 +1,271 @@
+package fr.univnantes.lina.uima.engines;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.fit.factory.CollectionReaderFactory;
+import org.apache.uima.jcas.JCas;
+
+import fr.univnantes.ttw.test.FakeTreeTagger;
+
+/**
+ * Tags a synthetic corpus with 1 to N threads against the scripted
+ * tree-tagger stand-in, and reports documents and tokens per second,
+ * per-document latency percentiles and peak heap as a properties file.
+ *
+ * Given a baseline report, exits with status 1 when a throughput falls,
+ * or the median latency rises, by more than the threshold, or when the
+ * p99 latency or the peak heap rises by more than the tail threshold.
+ * These depend on GC pauses, hence the looser default. A baseline only
+ * holds on the machine it was recorded on.
+ *
+ * Options, all optional: --documents, --mean-length, --length-sigma,
+ * --vocabulary, --zipf, --seed, --threads (the maximum), --warmup
+ * (documents per thread), --report, --baseline, --threshold and
+ * --tail-threshold (ratios).
+ */
+public class CorpusBenchmark {
+
+	private static final Map<String, String> DEFAULTS = new HashMap<String, String>();
+	static {
+		DEFAULTS.put("documents", "2000");
+		DEFAULTS.put("mean-length", "300");
+		DEFAULTS.put("length-sigma", "1.0");
+		DEFAULTS.put("vocabulary", "50000");
+		DEFAULTS.put("zipf", "1.0");
+		DEFAULTS.put("seed", "42");
+		DEFAULTS.put("threads", "4");
+		DEFAULTS.put("warmup", "100");
+		DEFAULTS.put("report", "build/benchmark/corpus.properties");
+		DEFAULTS.put("threshold", "0.2");
+		DEFAULTS.put("tail-threshold", "1.0");
+	}
+
+	private final Map<String, String> options;
+
+	public CorpusBenchmark(Map<String, String> options) {
+		this.options = options;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<String, String>(DEFAULTS);
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (!args[i].startsWith("--") || !DEFAULTS.containsKey(args[i].substring(2)) && !args[i].equals("--baseline")) {
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+			options.put(args[i].substring(2), args[i + 1]);
+		}
+		CorpusBenchmark benchmark = new CorpusBenchmark(options);
+		Properties report = benchmark.run();
+		benchmark.write(report);
+		if (options.containsKey("baseline")) {
+			List<String> regressions = compare(load(new File(options.get("baseline"))), report, Double.parseDouble(options.get("threshold")), Double.parseDouble(options.get("tail-threshold")));
+			for (String regression : regressions) {
+				System.err.println("Regression: " + regression);
+			}
+			System.exit(regressions.isEmpty() ? 0 : 1);
+		}
+		System.exit(0);
+	}
+
+	public Properties run() throws Exception {
+		Properties report = new Properties();
+		report.setProperty("documents", this.options.get("documents"));
+		report.setProperty("meanLength", this.options.get("mean-length"));
+		report.setProperty("vocabulary", this.options.get("vocabulary"));
+		report.setProperty("zipf", this.options.get("zipf"));
+		int maximum = Integer.parseInt(this.options.get("threads"));
+		for (int threads = 1; threads <= maximum; threads *= 2) {
+			this.run(threads, maximum, report);
+		}
+		if (Integer.highestOneBit(maximum) != maximum) {
+			this.run(maximum, maximum, report);
+		}
+		return report;
+	}
+
+	/*
+	 * Each thread tags its share of the corpus on its own engine. The
+	 * process pool is shared by all runs, so it is sized for the largest.
+	 */
+	private void run(final int threads, int maximum, Properties report) throws Exception {
+		final int documents = Integer.parseInt(this.options.get("documents"));
+		final int warmup = Integer.parseInt(this.options.get("warmup"));
+		final List<AnalysisEngine> engines = new ArrayList<AnalysisEngine>();
+		final List<JCas> cases = new ArrayList<JCas>();
+		for (int i = 0; i < threads; i++) {
+			engines.add(FakeTreeTagger.createEngine(true, TreeTaggerWrapper.PARAM_POOL_SIZE, maximum));
+			cases.add(FakeTreeTagger.createCas());
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Callable<long[]>> warmups = new ArrayList<Callable<long[]>>();
+			for (int i = 0; i < threads; i++) {
+				warmups.add(this.tag(engines.get(i), cases.get(i), warmup, -1 - i));
+			}
+			executor.invokeAll(warmups);
+			System.gc();
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+				pool.resetPeakUsage();
+			}
+			List<Callable<long[]>> shares = new ArrayList<Callable<long[]>>();
+			for (int i = 0; i < threads; i++) {
+				shares.add(this.tag(engines.get(i), cases.get(i), documents / threads + (i < documents % threads ? 1 : 0), i));
+			}
+			long start = System.nanoTime();
+			List<Future<long[]>> results = executor.invokeAll(shares);
+			long elapsed = System.nanoTime() - start;
+			long tokens = 0;
+			long[] latencies = new long[0];
+			for (Future<long[]> result : results) {
+				long[] share = result.get();
+				tokens += share[0];
+				int offset = latencies.length;
+				latencies = Arrays.copyOf(latencies, offset + share.length - 1);
+				System.arraycopy(share, 1, latencies, offset, share.length - 1);
+			}
+			Arrays.sort(latencies);
+			long peakHeap = 0;
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+				if (pool.getType() == MemoryType.HEAP) {
+					peakHeap += pool.getPeakUsage().getUsed();
+				}
+			}
+			String prefix = "threads." + threads + ".";
+			double seconds = elapsed / 1e9;
+			report.setProperty(prefix + "docsPerSecond", format(latencies.length / seconds));
+			report.setProperty(prefix + "tokensPerSecond", format(tokens / seconds));
+			report.setProperty(prefix + "p50LatencyMs", format(percentile(latencies, 50) / 1e6));
+			report.setProperty(prefix + "p99LatencyMs", format(percentile(latencies, 99) / 1e6));
+			report.setProperty(prefix + "peakHeapMb", format(peakHeap / 1048576.0));
+		} finally {
+			executor.shutdown();
+			for (AnalysisEngine engine : engines) {
+				engine.destroy();
+			}
+		}
+	}
+
+	/*
+	 * The tokens tagged, then the latency of each document in ns
+	 */
+	private Callable<long[]> tag(final AnalysisEngine engine, final JCas cas, final int documents, final int share) throws Exception {
+		final CollectionReader reader = CollectionReaderFactory.createReader(SyntheticCorpusReader.class, FakeTreeTagger.getTypeSystem(),
+				SyntheticCorpusReader.PARAM_DOCUMENT_COUNT, documents,
+				SyntheticCorpusReader.PARAM_MEAN_LENGTH, Integer.parseInt(this.options.get("mean-length")),
+				SyntheticCorpusReader.PARAM_LENGTH_SIGMA, Float.parseFloat(this.options.get("length-sigma")),
+				SyntheticCorpusReader.PARAM_VOCABULARY_SIZE, Integer.parseInt(this.options.get("vocabulary")),
+				SyntheticCorpusReader.PARAM_ZIPF_EXPONENT, Float.parseFloat(this.options.get("zipf")),
+				SyntheticCorpusReader.PARAM_SEED, Integer.parseInt(this.options.get("seed")) * 31 + share);
+		return new Callable<long[]>() {
+
+			@Override
+			public long[] call() throws Exception {
+				long[] results = new long[documents + 1];
+				for (int i = 1; reader.hasNext(); i++) {
+					cas.reset();
+					reader.getNext(cas.getCas());
+					long start = System.nanoTime();
+					engine.process(cas);
+					results[i] = System.nanoTime() - start;
+					results[0] += cas.getAnnotationIndex(cas.getTypeSystem().getType(FakeTreeTagger.TOKEN_TYPE)).size();
+				}
+				reader.destroy();
+				return results;
+			}
+		};
+	}
+
+	private static long percentile(long[] sorted, double percentile) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int rank = (int) Math.ceil(sorted.length * percentile / 100);
+		return sorted[Math.max(0, rank - 1)];
+	}
+
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.2f", value);
+	}
+
+	private void write(Properties report) throws IOException {
+		File file = new File(this.options.get("report"));
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+		// sorted and undated, so that baselines diff well
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "ISO-8859-1");
+		try {
+			writer.write("# Corpus benchmark against the tree-tagger stand-in, on one machine:\n");
+			writer.write("# record it again on the machine running corpusBenchmarkCheck\n");
+			for (String key : new TreeSet<String>(report.stringPropertyNames())) {
+				writer.write(key + "=" + report.getProperty(key) + "\n");
+				System.out.println(key + "=" + report.getProperty(key));
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static Properties load(File file) throws IOException {
+		Properties properties = new Properties();
+		InputStream inputStream = new FileInputStream(file);
+		try {
+			properties.load(inputStream);
+		} finally {
+			inputStream.close();
+		}
+		return properties;
+	}
+
+	/*
+	 * Measures of the baseline the report is worse than by more than the
+	 * threshold, or the tail threshold for the p99 latency and the peak
+	 * heap, measures missing from either side being ignored. A corpus
+	 * generated with other settings is reported too.
+	 */
+	public static List<String> compare(Properties baseline, Properties report, double threshold, double tailThreshold) {
+		List<String> regressions = new ArrayList<String>();
+		for (String key : new TreeSet<String>(baseline.stringPropertyNames())) {
+			if (!key.startsWith("threads.")) {
+				if (!baseline.getProperty(key).equals(report.getProperty(key))) {
+					regressions.add("the baseline was recorded with " + key + "=" + baseline.getProperty(key));
+				}
+				continue;
+			} else if (report.getProperty(key) == null) {
+				continue;
+			}
+			double expected = Double.parseDouble(baseline.getProperty(key));
+			double actual = Double.parseDouble(report.getProperty(key));
+			boolean higherIsBetter = key.endsWith("PerSecond");
+			double allowed = key.endsWith(".p99LatencyMs") || key.endsWith(".peakHeapMb") ? tailThreshold : threshold;
+			if (higherIsBetter ? actual < expected * (1 - allowed) : actual > expected * (1 + allowed)) {
+				regressions.add(key + " is " + report.getProperty(key) + ", baseline " + baseline.getProperty(key));
+			}
+		}
+		return regressions;
+	}
+
+}
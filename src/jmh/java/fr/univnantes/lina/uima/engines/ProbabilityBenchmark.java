@@ -0,0 +1,84 @@
+package fr.univnantes.lina.uima.engines;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.jcas.JCas;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.univnantes.ttw.test.FakeTreeTagger;
+
+/**
+ * Overhead of the probability output over plain tagging, the stand-in
+ * giving two alternatives to open-class words and one to the others.
+ * Allocation rates are compared with the GC profiler.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProbabilityBenchmark {
+
+	@Param({ "10000" })
+	private int documentSize;
+
+	/*
+	 * plain: tags and lemmata only, token: alternative tags and
+	 * probabilities as arrays of each token, document: probabilities
+	 * packed in an array of the document
+	 */
+	@Param({ "plain", "token", "document" })
+	private String mode;
+
+	private AnalysisEngine engine;
+	private JCas cas;
+
+	@Setup
+	public void setUp() throws Exception {
+		if (this.mode.equals("plain")) {
+			this.engine = FakeTreeTagger.createEngine(true);
+		} else if (this.mode.equals("token")) {
+			this.engine = FakeTreeTagger.createEngine(true,
+					TreeTaggerWrapper.PARAM_PROBABILITY_THRESHOLD, 0.1f,
+					TreeTaggerWrapper.PARAM_ALTERNATIVE_TAGS_FEATURE, "tags",
+					TreeTaggerWrapper.PARAM_ALTERNATIVE_PROBABILITIES_FEATURE, "probabilities");
+		} else {
+			this.engine = FakeTreeTagger.createEngine(true,
+					TreeTaggerWrapper.PARAM_PROBABILITY_THRESHOLD, 0.1f,
+					TreeTaggerWrapper.PARAM_DOCUMENT_PROBABILITIES_FEATURE, FakeTreeTagger.DOCUMENT_TYPE + ":probabilities");
+		}
+		this.cas = FakeTreeTagger.createCas();
+	}
+
+	@Setup(Level.Invocation)
+	public void fill() {
+		FakeTreeTagger.fill(this.cas, this.documentSize);
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.engine.destroy();
+	}
+
+	@Benchmark
+	public JCas process(TokenCounter counter) throws Exception {
+		this.engine.process(this.cas);
+		counter.tokens += this.documentSize;
+		return this.cas;
+	}
+
+}
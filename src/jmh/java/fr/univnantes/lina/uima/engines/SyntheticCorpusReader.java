@@ -0,0 +1,145 @@
+package fr.univnantes.lina.uima.engines;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Type;
+import org.apache.uima.collection.CollectionException;
+import org.apache.uima.fit.component.JCasCollectionReader_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Progress;
+import org.apache.uima.util.ProgressImpl;
+
+import fr.univnantes.ttw.test.FakeTreeTagger;
+
+/**
+ * Generates a reproducible synthetic corpus of tokenized documents, in the
+ * type system of {@link FakeTreeTagger}.
+ *
+ * Document lengths follow a log-normal distribution and words a Zipf
+ * distribution over the vocabulary, whose most frequent words are those
+ * the stand-in tags as closed-class words.
+ */
+public class SyntheticCorpusReader extends JCasCollectionReader_ImplBase {
+
+	public static final String PARAM_DOCUMENT_COUNT = "DocumentCount";
+	@ConfigurationParameter(name = PARAM_DOCUMENT_COUNT, mandatory=false, defaultValue="1000")
+	private int documentCount;
+
+	/*
+	 * Mean number of tokens of a document
+	 */
+	public static final String PARAM_MEAN_LENGTH = "MeanLength";
+	@ConfigurationParameter(name = PARAM_MEAN_LENGTH, mandatory=false, defaultValue="500")
+	private int meanLength;
+
+	/*
+	 * Standard deviation of the log of the document lengths, 0 gives
+	 * documents of the mean length only
+	 */
+	public static final String PARAM_LENGTH_SIGMA = "LengthSigma";
+	@ConfigurationParameter(name = PARAM_LENGTH_SIGMA, mandatory=false, defaultValue="1.0")
+	private float lengthSigma;
+
+	public static final String PARAM_VOCABULARY_SIZE = "VocabularySize";
+	@ConfigurationParameter(name = PARAM_VOCABULARY_SIZE, mandatory=false, defaultValue="50000")
+	private int vocabularySize;
+
+	/*
+	 * Exponent of the Zipf distribution of words, 0 makes all words
+	 * equally frequent
+	 */
+	public static final String PARAM_ZIPF_EXPONENT = "ZipfExponent";
+	@ConfigurationParameter(name = PARAM_ZIPF_EXPONENT, mandatory=false, defaultValue="1.0")
+	private float zipfExponent;
+
+	public static final String PARAM_SEED = "Seed";
+	@ConfigurationParameter(name = PARAM_SEED, mandatory=false, defaultValue="42")
+	private int seed;
+
+	private static final String[] CLOSED_CLASS_WORDS = { "the", ".", "a", "is", "this", "42" };
+
+	private String[] vocabulary;
+	private double[] cumulative;
+	private Random random;
+	private int generated;
+
+	@Override
+	public void initialize(UimaContext context) throws ResourceInitializationException {
+		super.initialize(context);
+		this.random = new Random(this.seed);
+		this.vocabulary = new String[Math.max(this.vocabularySize, CLOSED_CLASS_WORDS.length)];
+		this.cumulative = new double[this.vocabulary.length];
+		double total = 0;
+		for (int rank = 0; rank < this.vocabulary.length; rank++) {
+			this.vocabulary[rank] = rank < CLOSED_CLASS_WORDS.length ? CLOSED_CLASS_WORDS[rank] : word(rank);
+			total += 1 / Math.pow(rank + 1, this.zipfExponent);
+			this.cumulative[rank] = total;
+		}
+		for (int rank = 0; rank < this.cumulative.length; rank++) {
+			this.cumulative[rank] /= total;
+		}
+	}
+
+	/*
+	 * A distinct lowercase word per rank
+	 */
+	private static String word(int rank) {
+		StringBuilder word = new StringBuilder();
+		for (int i = rank; i > 0; i /= 26) {
+			word.append((char) ('a' + i % 26));
+		}
+		return word.append("ing").toString();
+	}
+
+	@Override
+	public boolean hasNext() throws IOException, CollectionException {
+		return this.generated < this.documentCount;
+	}
+
+	@Override
+	public void getNext(JCas cas) throws IOException, CollectionException {
+		int length = this.nextLength();
+		StringBuilder text = new StringBuilder(length * 8);
+		int[] offsets = new int[length * 2];
+		for (int i = 0; i < length; i++) {
+			String word = this.nextWord();
+			offsets[i * 2] = text.length();
+			text.append(word);
+			offsets[i * 2 + 1] = text.length();
+			text.append(' ');
+		}
+		cas.setDocumentText(text.toString());
+		cas.setDocumentLanguage("en");
+		Type type = cas.getTypeSystem().getType(FakeTreeTagger.TOKEN_TYPE);
+		CAS view = cas.getCas();
+		for (int i = 0; i < length; i++) {
+			view.addFsToIndexes(view.createAnnotation(type, offsets[i * 2], offsets[i * 2 + 1]));
+		}
+		this.generated++;
+	}
+
+	private int nextLength() {
+		if (this.lengthSigma <= 0) {
+			return Math.max(1, this.meanLength);
+		}
+		double mu = Math.log(this.meanLength) - this.lengthSigma * this.lengthSigma / 2;
+		return (int) Math.max(1, Math.round(Math.exp(mu + this.lengthSigma * this.random.nextGaussian())));
+	}
+
+	private String nextWord() {
+		int rank = Arrays.binarySearch(this.cumulative, this.random.nextDouble());
+		return this.vocabulary[Math.min(rank < 0 ? -rank - 1 : rank, this.vocabulary.length - 1)];
+	}
+
+	@Override
+	public Progress[] getProgress() {
+		return new Progress[] { new ProgressImpl(this.generated, this.documentCount, Progress.ENTITIES) };
+	}
+
+}
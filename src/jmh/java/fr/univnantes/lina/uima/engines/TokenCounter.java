@@ -0,0 +1,24 @@
+package fr.univnantes.lina.uima.engines;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Reports the number of tokens tagged per second next to the number of
+ * benchmark invocations.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class TokenCounter {
+
+	public long tokens;
+
+	@Setup(Level.Iteration)
+	public void reset() {
+		this.tokens = 0;
+	}
+
+}
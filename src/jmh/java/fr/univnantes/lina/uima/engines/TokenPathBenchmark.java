@@ -0,0 +1,93 @@
+package fr.univnantes.lina.uima.engines;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import fr.univnantes.ttw.test.FakeTreeTagger;
+
+/**
+ * The per-token work done on the tt4j threads, without the process
+ * round-trip: lowercasing a token for TreeTagger and picking, interning
+ * and writing its result.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenPathBenchmark {
+
+	@Param({ "1000" })
+	private int documentSize;
+
+	private AnalysisEngine engine;
+	private AnnotationHandler handler;
+	private AnnotationAdapter adapter;
+	private List<Annotation> tokens;
+	private String[] lemmata;
+
+	@Setup
+	public void setUp() throws Exception {
+		this.engine = FakeTreeTagger.createEngine(true);
+		JCas cas = FakeTreeTagger.createCas();
+		FakeTreeTagger.fill(cas, this.documentSize);
+		// resolves the types against the CAS type system
+		this.engine.process(cas);
+		TreeTaggerWrapper annotator = FakeTreeTagger.getAnnotator(this.engine);
+		this.handler = annotator.getHandler();
+		this.adapter = annotator.getAdapter();
+		this.adapter.prepare(Collections.singletonList(cas));
+		this.tokens = new ArrayList<Annotation>();
+		for (Annotation token : cas.getAnnotationIndex(cas.getTypeSystem().getType(FakeTreeTagger.TOKEN_TYPE))) {
+			this.tokens.add(token);
+		}
+		this.lemmata = new String[this.tokens.size()];
+		for (int i = 0; i < this.lemmata.length; i++) {
+			String text = this.tokens.get(i).getCoveredText();
+			this.lemmata[i] = i % 3 == 0 ? text + "|" + text.toUpperCase() + "?" : text;
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.adapter.clear();
+		this.engine.destroy();
+	}
+
+	@Benchmark
+	public void getText(TokenCounter counter, Blackhole blackhole) {
+		for (Annotation token : this.tokens) {
+			blackhole.consume(this.adapter.getText(token));
+		}
+		counter.tokens += this.tokens.size();
+	}
+
+	@Benchmark
+	public void token(TokenCounter counter) {
+		for (int i = 0; i < this.lemmata.length; i++) {
+			this.handler.token(this.tokens.get(i), "NN", this.lemmata[i]);
+		}
+		counter.tokens += this.tokens.size();
+	}
+
+}
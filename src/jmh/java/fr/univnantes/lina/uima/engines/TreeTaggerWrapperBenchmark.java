@@ -0,0 +1,76 @@
+package fr.univnantes.lina.uima.engines;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.jcas.JCas;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import fr.univnantes.ttw.test.FakeTreeTagger;
+
+/**
+ * End to end tagging of a synthetic document, in tokens per second.
+ *
+ * Run with <code>gradle jmh</code>; the number of threads is set with
+ * <code>-Pjmh="-t 4"</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TreeTaggerWrapperBenchmark {
+
+	@Param({ "100", "1000", "10000" })
+	private int documentSize;
+
+	@Param({ "true", "false" })
+	private boolean update;
+
+	private AnalysisEngine engine;
+	private JCas cas;
+
+	@Setup
+	public void setUp(BenchmarkParams parameters) throws Exception {
+		this.engine = FakeTreeTagger.createEngine(this.update, TreeTaggerWrapper.PARAM_POOL_SIZE, parameters.getThreads());
+		this.cas = FakeTreeTagger.createCas();
+		FakeTreeTagger.fill(this.cas, this.documentSize);
+	}
+
+	/*
+	 * Annotations added by the previous invocation would be tagged again
+	 */
+	@Setup(Level.Invocation)
+	public void refill() {
+		if (!this.update) {
+			FakeTreeTagger.fill(this.cas, this.documentSize);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.engine.destroy();
+	}
+
+	@Benchmark
+	public JCas process(TokenCounter counter) throws Exception {
+		this.engine.process(this.cas);
+		counter.tokens += this.documentSize;
+		return this.cas;
+	}
+
+}
@@ -0,0 +1,91 @@
+package fr.univnantes.lina.uima.engines;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.jcas.JCas;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.univnantes.ttw.test.FakeTreeTagger;
+
+/**
+ * Tagging of a 1M token document in each write mode. JMH does not report
+ * secondary results of single shot benchmarks, the time spent writing to
+ * the CAS is printed after each iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WriteModeBenchmark {
+
+	@Param({ "1000000" })
+	private int documentSize;
+
+	/*
+	 * update: features of the tokens, annotate: one Tag and one Lemma
+	 * annotation per token, bulk: the same created once tagging is over,
+	 * combined: a single Word annotation per token created in bulk
+	 */
+	@Param({ "update", "annotate", "bulk", "combined" })
+	private String mode;
+
+	private AnalysisEngine engine;
+	private JCas cas;
+	private double writeTime;
+
+	@Setup
+	public void setUp() throws Exception {
+		if (this.mode.equals("update")) {
+			this.engine = FakeTreeTagger.createEngine(true);
+		} else if (this.mode.equals("annotate")) {
+			this.engine = FakeTreeTagger.createEngine(false);
+		} else if (this.mode.equals("bulk")) {
+			this.engine = FakeTreeTagger.createEngine(false, TreeTaggerWrapper.PARAM_BULK_ANNOTATION_CREATION, true);
+		} else {
+			String word = FakeTreeTagger.WORD_TYPE;
+			this.engine = FakeTreeTagger.createEngine(word + ":tag", word + ":lemma", false, TreeTaggerWrapper.PARAM_BULK_ANNOTATION_CREATION, true);
+		}
+		this.cas = FakeTreeTagger.createCas();
+	}
+
+	@Setup(Level.Iteration)
+	public void fill() {
+		FakeTreeTagger.fill(this.cas, this.documentSize);
+	}
+
+	@TearDown(Level.Iteration)
+	public void report() {
+		System.out.printf("CAS write time: %.1f ms%n", this.writeTime);
+		this.writeTime = 0;
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.engine.destroy();
+	}
+
+	@Benchmark
+	public JCas process() throws Exception {
+		TreeTaggerStatistics statistics = TreeTaggerStatistics.getInstance();
+		double before = statistics.getWriteTime();
+		this.engine.process(this.cas);
+		this.writeTime += statistics.getWriteTime() - before;
+		return this.cas;
+	}
+
+}
@@ -0,0 +1,98 @@
+package fr.univnantes.lina.uima.engines;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.annolab.tt4j.TokenAdapter;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+
+/**
+ * The lowercased covered text of a token, as sent to TreeTagger.
+ *
+ * The document text of each CAS of a batch is lowercased once, so that
+ * the text of a token is a substring of it. tt4j threads read it without
+ * holding any lock on the CAS.
+ */
+class AnnotationAdapter implements TokenAdapter<Annotation> {
+
+	private static final String UNSPECIFIED_LANGUAGE = "x-unspecified";
+
+	private final Locale locale;
+	private final Map<CAS, Text> texts = new IdentityHashMap<CAS, Text>();
+
+	/*
+	 * null lowercases with the document language
+	 */
+	public AnnotationAdapter(Locale locale) {
+		this.locale = locale;
+	}
+
+	/*
+	 * Lowercases the document text of each CAS of the batch once,
+	 * before tt4j threads start reading it
+	 */
+	public void prepare(List<JCas> batch) {
+		this.texts.clear();
+		for (JCas cas : batch) {
+			Locale locale = this.getLocale(cas);
+			String text = cas.getDocumentText();
+			String lowered = text == null ? null : text.toLowerCase(locale);
+			if (lowered != null && lowered.length() != text.length()) {
+				// offsets do not match any more, lowercase each token instead
+				lowered = null;
+			}
+			this.texts.put(cas.getCas(), new Text(lowered, locale));
+		}
+	}
+
+	public void clear() {
+		this.texts.clear();
+	}
+
+	/*
+	 * The configured locale, or the document language when none is configured
+	 */
+	private Locale getLocale(JCas cas) {
+		if (this.locale != null) {
+			return this.locale;
+		}
+		String language = cas.getDocumentLanguage();
+		if (language == null || language.equals(UNSPECIFIED_LANGUAGE)) {
+			return Locale.ROOT;
+		} else {
+			return Locale.forLanguageTag(language);
+		}
+	}
+
+	@Override
+	public String getText(Annotation annotation) {
+		if (annotation == Tokens.BOUNDARY) {
+			return Tokens.BOUNDARY_TEXT;
+		}
+		Text text = this.texts.get(annotation.getCAS());
+		if (text == null) {
+			return annotation.getCoveredText().toLowerCase(Locale.ROOT);
+		} else if (text.lowered == null) {
+			return annotation.getCoveredText().toLowerCase(text.locale);
+		} else {
+			return text.lowered.substring(annotation.getBegin(), annotation.getEnd());
+		}
+	}
+
+	private static class Text {
+
+		private final String lowered;
+		private final Locale locale;
+
+		public Text(String lowered, Locale locale) {
+			this.lowered = lowered;
+			this.locale = locale;
+		}
+
+	}
+
+}
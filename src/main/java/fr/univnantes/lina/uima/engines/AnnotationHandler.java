@@ -0,0 +1,390 @@
+package fr.univnantes.lina.uima.engines;
+
+import org.annolab.tt4j.ProbabilityHandler;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.cas.FloatArrayFS;
+import org.apache.uima.cas.StringArrayFS;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.jcas.tcas.Annotation;
+
+import fr.univnantes.lina.uima.models.TreeTaggerTagset;
+
+/**
+ * Writes the tags and lemmata TreeTagger gives the tokens to the CAS, or
+ * buffers them in Results to be written later
+ */
+class AnnotationHandler implements ProbabilityHandler<Annotation> {
+
+	/*
+	 * Stands for the lemma of every token when LemmaFeature is unset
+	 */
+	private static final String NO_LEMMA = "";
+	private static final float[] CERTAIN = { 1f };
+
+	private Feature tagFeature;
+	
+	public void setTagFeature(Feature feature) {
+		this.tagFeature = feature;
+	}
+	
+	private Feature lemmaFeature;
+	
+	public void setLemmaFeature(Feature feature) {
+		this.lemmaFeature = feature;
+	}
+	
+	private Feature tagIdFeature;
+	
+	public void setTagIdFeature(Feature feature) {
+		this.tagIdFeature = feature;
+	}
+	
+	private TreeTaggerTagset tagset;
+	
+	/*
+	 * The tagset of the model of the next documents
+	 */
+	public void setTagset(TreeTaggerTagset tagset) {
+		this.tagset = tagset;
+	}
+	
+	private StringInterner lemmaDictionary;
+	
+	public void setLemmaDictionary(StringInterner lemmaDictionary) {
+		this.lemmaDictionary = lemmaDictionary;
+	}
+	
+	private Recorder recorder;
+	
+	public void setRecorder(Recorder recorder) {
+		this.recorder = recorder;
+	}
+	
+	private boolean tagStrings = true;
+	
+	public void enableTagStrings(boolean enabled) {
+		this.tagStrings = enabled;
+	}
+	
+	private boolean update;
+	
+	public void enableUpdate(boolean enabled) {
+		this.update = enabled;
+	}
+	
+	private boolean casOutput = true;
+	
+	public void enableCasOutput(boolean enabled) {
+		this.casOutput = enabled;
+	}
+	
+	private boolean combined;
+	
+	public void enableCombined(boolean enabled) {
+		this.combined = enabled;
+	}
+	
+	private Feature alternativeTagsFeature;
+	
+	public void setAlternativeTagsFeature(Feature feature) {
+		this.alternativeTagsFeature = feature;
+	}
+	
+	private Feature alternativeProbabilitiesFeature;
+	
+	public void setAlternativeProbabilitiesFeature(Feature feature) {
+		this.alternativeProbabilitiesFeature = feature;
+	}
+	
+	/*
+	 * tt4j reports the alternatives of a token after the token itself, 
+	 * which is held until the next one. pendingTags and 
+	 * pendingProbabilities are reused from token to token.
+	 */
+	private int maxAlternatives;
+	private Annotation pending;
+	private String pendingTag;
+	private String pendingLemma;
+	private String[] pendingTags;
+	private float[] pendingProbabilities;
+	private int pendingCount;
+	
+	public void enableProbabilities(int maxAlternatives) {
+		this.maxAlternatives = maxAlternatives;
+		this.pendingTags = new String[maxAlternatives];
+		this.pendingProbabilities = new float[maxAlternatives];
+		this.certainTags = new String[1];
+	}
+	
+	/*
+	 * Alternatives of the next token written, a slice of shared arrays, 
+	 * none when count is 0
+	 */
+	private String[] alternativeTags;
+	private float[] alternativeProbabilities;
+	private int alternativeOffset;
+	private int alternativeCount;
+	private String[] certainTags;
+	
+	public void setAlternatives(String[] tags, float[] probabilities, int offset, int count) {
+		this.alternativeTags = tags;
+		this.alternativeProbabilities = probabilities;
+		this.alternativeOffset = offset;
+		this.alternativeCount = count;
+	}
+	
+	/*
+	 * The tag of a token tagged without TreeTagger, with probability 1
+	 */
+	public void setCertain(String tag) {
+		if (this.maxAlternatives > 0) {
+			this.certainTags[0] = tag;
+			this.setAlternatives(this.certainTags, CERTAIN, 0, 1);
+		}
+	}
+	
+	private Results results;
+	
+	/*
+	 * The tokens of the round-trip and the position in them of the next
+	 * token, only set with a token cache
+	 */
+	private Tokens tokens;
+	private int position;
+	
+	public void expect(Tokens tokens) {
+		this.tokens = tokens.hasCache() ? tokens : null;
+		this.position = 0;
+	}
+	
+	private long writeNanos;
+	
+	/*
+	 * Time spent writing since the last call
+	 */
+	public long takeWriteNanos() {
+		long nanos = this.writeNanos;
+		this.writeNanos = 0;
+		return nanos;
+	}
+	
+	/*
+	 * A handler that collects results instead of writing them to the CAS
+	 */
+	public AnnotationHandler buffer(Results results) {
+		AnnotationHandler buffer = new AnnotationHandler();
+		buffer.tagFeature = this.tagFeature;
+		buffer.lemmaFeature = this.lemmaFeature;
+		buffer.tagIdFeature = this.tagIdFeature;
+		buffer.tagset = this.tagset;
+		buffer.lemmaDictionary = this.lemmaDictionary;
+		buffer.recorder = this.recorder;
+		buffer.tagStrings = this.tagStrings;
+		buffer.update = this.update;
+		buffer.casOutput = this.casOutput;
+		buffer.combined = this.combined;
+		buffer.alternativeTagsFeature = this.alternativeTagsFeature;
+		buffer.alternativeProbabilitiesFeature = this.alternativeProbabilitiesFeature;
+		buffer.results = results;
+		if (this.maxAlternatives > 0) {
+			buffer.enableProbabilities(this.maxAlternatives);
+		}
+		return buffer;
+	}
+	
+	public void token(Annotation annotation, String tag, String lemma) {
+		this.flush();
+		int position = this.position++;
+		if (annotation == Tokens.BOUNDARY) {
+			return;
+		}
+		String picked = null;
+		if (this.lemmaFeature == null) {
+			picked = NO_LEMMA;
+		} else if (lemma == null) {
+			picked = annotation.getCoveredText(); // "unknown"
+			if (picked.endsWith("?")) {
+				picked = picked.substring(0, picked.length() - 1);
+			}
+		} else if (this.tokens == null) {
+			picked = this.pick(lemma);
+		} else {
+			TokenCache.Entry entry = this.tokens.getCacheEntry(position);
+			if (entry != null && entry.getTag().equals(tag)) {
+				picked = entry.getLemma();
+			} else {
+				picked = this.pick(lemma);
+				this.tokens.cache(position, tag, picked);
+			}
+		}
+		assert (picked != null);
+		if (this.maxAlternatives > 0) {
+			this.pending = annotation;
+			this.pendingTag = tag;
+			this.pendingLemma = picked;
+			this.pendingCount = 0;
+		} else if (this.results == null) {
+			this.write(annotation, tag, picked);
+		} else {
+			this.results.add(annotation, tag, picked);
+		}
+	}
+	
+	/*
+	 * Called after token for each alternative of the token, best first
+	 */
+	public void probability(String tag, String lemma, double probability) {
+		if (this.pending != null && this.pendingCount < this.maxAlternatives) {
+			this.pendingTags[this.pendingCount] = tag;
+			this.pendingProbabilities[this.pendingCount] = (float) probability;
+			this.pendingCount++;
+		}
+	}
+	
+	/*
+	 * Writes the token held for its alternatives, once they are all in
+	 */
+	public void flush() {
+		if (this.pending == null) {
+			return;
+		}
+		Annotation annotation = this.pending;
+		this.pending = null;
+		if (this.results == null) {
+			this.setAlternatives(this.pendingTags, this.pendingProbabilities, 0, this.pendingCount);
+			this.write(annotation, this.pendingTag, this.pendingLemma);
+		} else {
+			this.results.add(annotation, this.pendingTag, this.pendingLemma);
+			this.results.addAlternatives(this.pendingTags, this.pendingProbabilities, this.pendingCount);
+		}
+	}
+	
+	/*
+	 * Drops the token held after a failed round-trip
+	 */
+	public void discard() {
+		this.pending = null;
+	}
+	
+	/*
+	 * Selects the last of the '|' separated lemmata and strips its trailing '?',
+	 * scanning characters instead of splitting.
+	 */
+	private String pick(String lemma) {
+		int end = lemma.length();
+		while (end > 0 && lemma.charAt(end - 1) == '|') {
+			end--;
+		}
+		if (end == 0) {
+			return lemma;
+		}
+		int start = lemma.lastIndexOf('|', end - 1) + 1;
+		if (lemma.charAt(end - 1) == '?') {
+			end--;
+		}
+		if (this.lemmaDictionary == null) {
+			return (start == 0 && end == lemma.length()) ? lemma : lemma.substring(start, end);
+		} else {
+			return this.lemmaDictionary.intern(lemma, start, end);
+		}
+	}
+	
+	public void write(Annotation annotation, String tag, String picked) {
+		long start = System.nanoTime();
+		CAS cas = annotation.getCAS();
+		int begin = annotation.getBegin();
+		int end = annotation.getEnd();
+		if (!this.casOutput) {
+			// recorded only
+		} else if (this.update) {
+			this.setTag(annotation, tag);
+			if (this.lemmaFeature != null) {
+				this.update(cas, annotation, this.lemmaFeature, picked);
+			}
+		} else {
+			this.annotateTag(cas, begin, end, tag);
+			if (this.lemmaFeature != null) {
+				this.annotate(cas, this.lemmaFeature, begin, end, picked);
+			}
+		}
+		this.writeNanos += System.nanoTime() - start;
+		this.record(annotation, tag, picked);
+		this.alternativeCount = 0;
+	}
+
+	/*
+	 * Bulk creation, called in index order once tagging is over
+	 */
+	public void create(Annotation annotation, String tag, String picked) {
+		CAS cas = annotation.getCAS();
+		int begin = annotation.getBegin();
+		int end = annotation.getEnd();
+		if (!this.casOutput) {
+			// recorded only
+		} else if (this.combined) {
+			AnnotationFS created = cas.createAnnotation(this.tagFeature.getDomain(), begin, end);
+			this.setTag(created, tag);
+			created.setStringValue(this.lemmaFeature, picked);
+			cas.addFsToIndexes(created);
+		} else {
+			this.annotateTag(cas, begin, end, tag);
+			if (this.lemmaFeature != null) {
+				this.annotate(cas, this.lemmaFeature, begin, end, picked);
+			}
+		}
+		this.record(annotation, tag, picked);
+		this.alternativeCount = 0;
+	}
+	
+	private void record(Annotation annotation, String tag, String picked) {
+		this.recorder.record(annotation, tag, picked, this.alternativeProbabilities, this.alternativeOffset, this.alternativeCount);
+	}
+
+	private void update(CAS cas, Annotation annotation, Feature feature, String value) {
+		annotation.setStringValue(feature,value);
+	}
+	
+	private void setTag(FeatureStructure structure, String tag) {
+		if (this.tagStrings) {
+			structure.setStringValue(this.tagFeature, tag);
+		}
+		if (this.tagIdFeature != null) {
+			structure.setIntValue(this.tagIdFeature, this.tagset.getId(tag));
+		}
+		if (this.alternativeCount > 0) {
+			this.setAlternatives(structure);
+		}
+	}
+	
+	private void setAlternatives(FeatureStructure structure) {
+		CAS cas = structure.getCAS();
+		if (this.alternativeTagsFeature != null) {
+			StringArrayFS tags = cas.createStringArrayFS(this.alternativeCount);
+			tags.copyFromArray(this.alternativeTags, this.alternativeOffset, 0, this.alternativeCount);
+			structure.setFeatureValue(this.alternativeTagsFeature, tags);
+		}
+		if (this.alternativeProbabilitiesFeature != null) {
+			FloatArrayFS probabilities = cas.createFloatArrayFS(this.alternativeCount);
+			probabilities.copyFromArray(this.alternativeProbabilities, this.alternativeOffset, 0, this.alternativeCount);
+			structure.setFeatureValue(this.alternativeProbabilitiesFeature, probabilities);
+		}
+	}
+	
+	private void annotateTag(CAS cas, int begin, int end, String tag) {
+		AnnotationFS annotation = cas.createAnnotation(this.tagFeature.getDomain(), begin, end);
+		this.setTag(annotation, tag);
+		cas.addFsToIndexes(annotation);
+	}
+	
+	private void annotate(CAS cas, Feature feature, int begin, int end, String value) {
+		Type type = feature.getDomain();
+		AnnotationFS annotation = cas.createAnnotation(type, begin, end);
+		annotation.setStringValue(feature,value);
+		cas.addFsToIndexes(annotation);
+	}
+
+}
+
@@ -0,0 +1,205 @@
+package fr.univnantes.lina.uima.engines;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.FSIterator;
+import org.apache.uima.cas.Type;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.apache.uima.util.Level;
+
+import fr.univnantes.lina.uima.models.TreeTaggerOptions;
+
+/**
+ * The documents of an annotator in a document cache: the keys they are
+ * cached under, and the tags and lemmata read from and put to the cache,
+ * counting hits and misses.
+ *
+ * Documents are put from what the recorder recorded while tagging them.
+ */
+class CachedDocuments {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final TreeTaggerOptions options;
+	private final Class<?> backend;
+	private final boolean lemmata;
+	private final String[] preTaggingRules;
+	private final String preTaggingLexicon;
+	private DocumentCache cache;
+	private AnnotationAdapter adapter;
+	private Recorder recorder;
+	private Type tokenType;
+	private TokenScope scope;
+	private long hits;
+	private long misses;
+
+	/*
+	 * What the tags and lemmata of a document depend on, besides its
+	 * model and its tokens
+	 */
+	public CachedDocuments(TreeTaggerOptions options, Class<?> backend, boolean lemmata, String[] preTaggingRules, String preTaggingLexicon) {
+		this.options = options;
+		this.backend = backend;
+		this.lemmata = lemmata;
+		this.preTaggingRules = preTaggingRules;
+		this.preTaggingLexicon = preTaggingLexicon;
+	}
+
+	public void open(File directory, long maxSize) throws IOException {
+		this.cache = DocumentCache.open(directory, maxSize);
+	}
+
+	public void close() throws IOException {
+		if (this.cache != null) {
+			this.cache.close();
+			this.cache = null;
+		}
+	}
+
+	public void setAdapter(AnnotationAdapter adapter) {
+		this.adapter = adapter;
+	}
+
+	public void setRecorder(Recorder recorder) {
+		this.recorder = recorder;
+	}
+
+	public void setTokenType(Type tokenType) {
+		this.tokenType = tokenType;
+	}
+
+	public void setScope(TokenScope scope) {
+		this.scope = scope;
+	}
+
+	/*
+	 * Digest of the model, the arguments and the texts sent to TreeTagger.
+	 * The size and modification time of the model and lexicon files tell 
+	 * apart a file replaced at the same path.
+	 */
+	public byte[] getKey(JCas cas, String model, File modelFile) throws AnalysisEngineProcessException {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("MD5");
+			digest.update(model.getBytes(UTF_8));
+			digestStamp(digest, modelFile);
+			digest.update((byte) '\n');
+			digest.update(this.options.toString().getBytes(UTF_8));
+			digest.update((byte) '\t');
+			digest.update(this.backend.getName().getBytes(UTF_8));
+			// lemmata are not picked without a lemma feature
+			digest.update((byte) (this.lemmata ? '+' : '-'));
+			for (String rule : this.preTaggingRules) {
+				digest.update((byte) '\t');
+				digest.update(rule.getBytes(UTF_8));
+			}
+			if (this.preTaggingLexicon != null) {
+				digest.update((byte) '\t');
+				digest.update(this.preTaggingLexicon.getBytes(UTF_8));
+				digestStamp(digest, new File(this.preTaggingLexicon));
+			}
+			for (Annotation token : cas.getAnnotationIndex(this.tokenType)) {
+				digest.update((byte) '\n');
+				digest.update(this.adapter.getText(token).getBytes(UTF_8));
+			}
+			if (this.scope.isScoped()) {
+				for (Segment segment : this.scope.getSegments(cas)) {
+					digest.update((" " + segment.getFirst().getBegin() + "+" + segment.getCount()).getBytes(UTF_8));
+				}
+			}
+			return digest.digest();
+		} catch (NoSuchAlgorithmException e) {
+			throw new AnalysisEngineProcessException(e);
+		}
+	}
+
+	private static void digestStamp(MessageDigest digest, File file) {
+		digest.update((" " + file.length() + " " + file.lastModified()).getBytes(UTF_8));
+	}
+
+	/*
+	 * Writes the cached tags and lemmata of a document with the handler, 
+	 * creating annotations in bulk or not. The number of tokens written, 
+	 * -1 when the document is not cached.
+	 */
+	public int write(JCas cas, byte[] key, AnnotationHandler handler, boolean bulk) {
+		DocumentCache.Entry entry;
+		try {
+			entry = this.cache.get(key);
+		} catch (IOException e) {
+			UIMAFramework.getLogger().log(Level.WARNING, "Cannot read the document cache: " + e.getMessage());
+			return -1;
+		}
+		if (entry == null || entry.getTokens() != cas.getAnnotationIndex(this.tokenType).size()) {
+			this.misses++;
+			return -1;
+		}
+		FSIterator<Annotation> tokens = cas.getAnnotationIndex(this.tokenType).iterator();
+		this.hits++;
+		int position = 0;
+		int next = 0;
+		while (tokens.hasNext() && next < entry.size()) {
+			Annotation token = tokens.next();
+			if (position == entry.getPosition(next)) {
+				if (bulk) {
+					handler.create(token, entry.getTag(next), entry.getLemma(next));
+				} else {
+					handler.write(token, entry.getTag(next), entry.getLemma(next));
+				}
+				next++;
+			}
+			position++;
+		}
+		return entry.size();
+	}
+
+	/*
+	 * Puts what was recorded for a document tagged by TreeTagger
+	 */
+	public void put(JCas cas, byte[] key) {
+		Recording recording = this.recorder.get(cas);
+		Map<Integer, Integer> positions = this.recorder.getPositions(cas);
+		int count = positions.size();
+		String[] tags = new String[count];
+		String[] lemmata = new String[count];
+		for (int i = 0; i < recording.size(); i++) {
+			int position = positions.get(recording.getAnnotation(i).getAddress());
+			tags[position] = recording.getTag(i);
+			lemmata[position] = recording.getLemma(i);
+		}
+		int size = recording.size();
+		int[] entryPositions = new int[size];
+		String[] entryTags = new String[size];
+		String[] entryLemmata = new String[size];
+		int next = 0;
+		for (int position = 0; position < count; position++) {
+			if (tags[position] != null) {
+				entryPositions[next] = position;
+				entryTags[next] = tags[position];
+				entryLemmata[next] = lemmata[position];
+				next++;
+			}
+		}
+		try {
+			this.cache.put(key, new DocumentCache.Entry(count, entryPositions, entryTags, entryLemmata));
+		} catch (IOException e) {
+			UIMAFramework.getLogger().log(Level.WARNING, "Cannot write the document cache: " + e.getMessage());
+		}
+	}
+
+	public long getHits() {
+		return this.hits;
+	}
+
+	public long getMisses() {
+		return this.misses;
+	}
+
+}
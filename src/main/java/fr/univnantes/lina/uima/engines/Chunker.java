@@ -0,0 +1,97 @@
+package fr.univnantes.lina.uima.engines;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.cas.FSIterator;
+import org.apache.uima.cas.Type;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+
+/**
+ * Splits the tokens of a CAS in chunks of at most maxSize tokens, cut at
+ * the last sentence boundary when a sentence type is set. Sentences
+ * longer than maxSize are cut anyway.
+ */
+class Chunker {
+
+	private final Type tokenType;
+	private final Type sentenceType;
+	private final int maxSize;
+
+	/*
+	 * sentenceType may be null
+	 */
+	public Chunker(Type tokenType, Type sentenceType, int maxSize) {
+		this.tokenType = tokenType;
+		this.sentenceType = sentenceType;
+		this.maxSize = maxSize;
+	}
+
+	/*
+	 * Chunks never span two regions
+	 */
+	public List<Segment> chunk(List<Segment> regions) {
+		List<Segment> chunks = new ArrayList<Segment>();
+		for (Segment region : regions) {
+			this.chunk(region, chunks);
+		}
+		return chunks;
+	}
+
+	private void chunk(Segment region, List<Segment> chunks) {
+		JCas cas = region.getCas();
+		FSIterator<Annotation> tokens = cas.getAnnotationIndex(this.tokenType).iterator();
+		if (region.getFirst() != null) {
+			tokens.moveTo(region.getFirst());
+		}
+		int remaining = region.getCount();
+		FSIterator<Annotation> sentences = this.sentenceType == null ? null : cas.getAnnotationIndex(this.sentenceType).iterator();
+		int sentenceEnd = -1;
+		Annotation first = null;
+		int count = 0;
+		Annotation sentenceFirst = null;
+		int sentenceStart = 0;
+		Annotation previous = null;
+		while (remaining-- > 0 && tokens.hasNext()) {
+			Annotation token = tokens.next();
+			// chunks are located by their first token, never cut between two tokens of the same span
+			boolean separable = previous == null || token.getBegin() != previous.getBegin() || token.getEnd() != previous.getEnd();
+			boolean opens = false;
+			if (sentences != null && token.getBegin() >= sentenceEnd) {
+				while (token.getBegin() >= sentenceEnd && sentences.hasNext()) {
+					sentenceEnd = sentences.next().getEnd();
+				}
+				if (token.getBegin() >= sentenceEnd) {
+					sentenceEnd = Integer.MAX_VALUE;
+				}
+				opens = true;
+			}
+			if (count >= this.maxSize && separable) {
+				int cut = (opens || sentenceStart == 0) ? count : sentenceStart;
+				chunks.add(new Segment(cas, first, cut));
+				if (cut == count) {
+					first = null;
+					count = 0;
+				} else {
+					first = sentenceFirst;
+					count -= cut;
+				}
+				sentenceStart = 0;
+			}
+			if (opens && separable) {
+				sentenceFirst = token;
+				sentenceStart = count;
+			}
+			if (first == null) {
+				first = token;
+			}
+			count++;
+			previous = token;
+		}
+		if (count > 0) {
+			chunks.add(new Segment(cas, first, count));
+		}
+	}
+
+}
@@ -0,0 +1,380 @@
+package fr.univnantes.lina.uima.engines;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.util.Level;
+
+/**
+ * A persistent cache of the tags and lemmata of whole documents, keyed by
+ * a digest of their token texts, the model and the TreeTagger arguments.
+ *
+ * Entries are appended to a single file and read with positional reads,
+ * so that any number of threads can read while one appends. Once the file
+ * grows over its maximum size, the most recently used entries are copied
+ * to a new file that atomically replaces the old one.
+ *
+ * A cache directory must only be used by one JVM at a time; within a JVM,
+ * {@link #open(File, long)} shares one instance per directory, closed by
+ * the {@link #close()} matching the last open.
+ */
+public class DocumentCache {
+
+	public static final String FILE_NAME = "tagging.cache";
+
+	private static final int KEY_LENGTH = 16;
+	private static final int HEADER_LENGTH = KEY_LENGTH + 4;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final Map<File, DocumentCache> INSTANCES = new HashMap<File, DocumentCache>();
+
+	public static DocumentCache open(File directory, long maxSize) throws IOException {
+		File canonical = directory.getCanonicalFile();
+		synchronized (INSTANCES) {
+			DocumentCache cache = INSTANCES.get(canonical);
+			if (cache == null) {
+				cache = new DocumentCache(canonical, maxSize);
+				INSTANCES.put(canonical, cache);
+			}
+			cache.users++;
+			return cache;
+		}
+	}
+
+	private final File file;
+	private final long maxSize;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final LinkedHashMap<Key, long[]> index = new LinkedHashMap<Key, long[]>(16, 0.75f, true);
+	private RandomAccessFile data;
+	private FileChannel channel;
+	// guarded by INSTANCES
+	private int users;
+
+	private DocumentCache(File directory, long maxSize) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create " + directory);
+		}
+		this.file = new File(directory, FILE_NAME);
+		this.maxSize = maxSize;
+		this.openFile();
+	}
+
+	/*
+	 * Indexes the entries of the file, dropping a last entry left
+	 * incomplete by a crash
+	 */
+	private void openFile() throws IOException {
+		this.data = new RandomAccessFile(this.file, "rw");
+		this.channel = this.data.getChannel();
+		this.index.clear();
+		long size = this.channel.size();
+		long position = 0;
+		ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+		while (position + HEADER_LENGTH <= size) {
+			header.clear();
+			this.readFully(header, position);
+			header.flip();
+			byte[] key = new byte[KEY_LENGTH];
+			header.get(key);
+			int length = header.getInt();
+			if (length < 0 || position + HEADER_LENGTH + length > size) {
+				break;
+			}
+			this.index.put(new Key(key), new long[] { position + HEADER_LENGTH, length });
+			position += HEADER_LENGTH + length;
+		}
+		if (position < size) {
+			UIMAFramework.getLogger().log(Level.WARNING, "Truncating " + this.file + " at " + position + " of " + size + " bytes");
+			this.channel.truncate(position);
+		}
+	}
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = this.channel.read(buffer, position);
+			if (read < 0) {
+				throw new IOException("Unexpected end of " + this.file);
+			}
+			position += read;
+		}
+	}
+
+	/*
+	 * null when the key is not in the cache
+	 */
+	public Entry get(byte[] key) throws IOException {
+		this.lock.readLock().lock();
+		try {
+			long[] location;
+			synchronized (this.index) {
+				location = this.index.get(new Key(key));
+			}
+			if (location == null) {
+				return null;
+			}
+			ByteBuffer buffer = ByteBuffer.allocate((int) location[1]);
+			this.readFully(buffer, location[0]);
+			buffer.flip();
+			return Entry.decode(buffer);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	public void put(byte[] key, Entry entry) throws IOException {
+		byte[] payload = entry.encode();
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + payload.length);
+		buffer.put(key, 0, KEY_LENGTH);
+		buffer.putInt(payload.length);
+		buffer.put(payload);
+		buffer.flip();
+		this.lock.writeLock().lock();
+		try {
+			long position = this.channel.size();
+			while (buffer.hasRemaining()) {
+				this.channel.write(buffer, position + buffer.position());
+			}
+			synchronized (this.index) {
+				this.index.put(new Key(key.clone()), new long[] { position + HEADER_LENGTH, payload.length });
+			}
+			if (this.channel.size() > this.maxSize) {
+				this.compact();
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Keeps the most recently used entries, up to half the maximum size
+	 */
+	private void compact() throws IOException {
+		List<Key> kept = new ArrayList<Key>();
+		List<long[]> locations = new ArrayList<long[]>();
+		long size = 0;
+		synchronized (this.index) {
+			List<Map.Entry<Key, long[]>> entries = new ArrayList<Map.Entry<Key, long[]>>(this.index.entrySet());
+			for (int i = entries.size() - 1; i >= 0; i--) {
+				long[] location = entries.get(i).getValue();
+				if (size + HEADER_LENGTH + location[1] > this.maxSize / 2) {
+					break;
+				}
+				size += HEADER_LENGTH + location[1];
+				kept.add(entries.get(i).getKey());
+				locations.add(location);
+			}
+		}
+		File compacted = new File(this.file.getPath() + ".tmp");
+		RandomAccessFile output = new RandomAccessFile(compacted, "rw");
+		try {
+			output.setLength(0);
+			FileChannel target = output.getChannel();
+			// least recently used first, so that access order survives reopening
+			for (int i = kept.size() - 1; i >= 0; i--) {
+				long[] location = locations.get(i);
+				long position = location[0] - HEADER_LENGTH;
+				long length = HEADER_LENGTH + location[1];
+				long transferred = 0;
+				while (transferred < length) {
+					transferred += this.channel.transferTo(position + transferred, length - transferred, target);
+				}
+			}
+			target.force(true);
+		} finally {
+			output.close();
+		}
+		this.data.close();
+		Files.move(compacted.toPath(), this.file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		this.openFile();
+		UIMAFramework.getLogger().log(Level.INFO, "Compacted " + this.file + " to " + this.index.size() + " documents");
+	}
+
+	public int size() {
+		synchronized (this.index) {
+			return this.index.size();
+		}
+	}
+
+	public long getFileSize() throws IOException {
+		this.lock.readLock().lock();
+		try {
+			return this.channel.size();
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	public void close() throws IOException {
+		synchronized (INSTANCES) {
+			if (--this.users > 0) {
+				return;
+			}
+			INSTANCES.remove(this.file.getParentFile());
+		}
+		this.lock.writeLock().lock();
+		try {
+			this.data.close();
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	private static class Key {
+
+		private final byte[] bytes;
+		private final int hash;
+
+		public Key(byte[] bytes) {
+			this.bytes = bytes;
+			this.hash = Arrays.hashCode(bytes);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			return object instanceof Key && Arrays.equals(this.bytes, ((Key) object).bytes);
+		}
+	}
+
+	/**
+	 * The tag and lemma of the tagged tokens of a document, by position in
+	 * its token index. Tags and lemmata are encoded as indexes in a
+	 * dictionary of the entry.
+	 */
+	public static class Entry {
+
+		private final int tokens;
+		private final int[] positions;
+		private final String[] tags;
+		private final String[] lemmata;
+
+		public Entry(int tokens, int[] positions, String[] tags, String[] lemmata) {
+			this.tokens = tokens;
+			this.positions = positions;
+			this.tags = tags;
+			this.lemmata = lemmata;
+		}
+
+		public int getTokens() {
+			return this.tokens;
+		}
+
+		public int size() {
+			return this.positions.length;
+		}
+
+		public int getPosition(int i) {
+			return this.positions[i];
+		}
+
+		public String getTag(int i) {
+			return this.tags[i];
+		}
+
+		public String getLemma(int i) {
+			return this.lemmata[i];
+		}
+
+		private byte[] encode() {
+			Map<String, Integer> ids = new HashMap<String, Integer>();
+			List<String> dictionary = new ArrayList<String>();
+			int[] tagIds = new int[this.positions.length];
+			int[] lemmaIds = new int[this.positions.length];
+			for (int i = 0; i < this.positions.length; i++) {
+				tagIds[i] = id(this.tags[i], ids, dictionary);
+				lemmaIds[i] = id(this.lemmata[i], ids, dictionary);
+			}
+			ByteArrayOutputStream output = new ByteArrayOutputStream(this.positions.length * 3 + dictionary.size() * 8);
+			writeVarInt(output, this.tokens);
+			writeVarInt(output, dictionary.size());
+			for (String string : dictionary) {
+				byte[] bytes = string.getBytes(UTF_8);
+				writeVarInt(output, bytes.length);
+				output.write(bytes, 0, bytes.length);
+			}
+			writeVarInt(output, this.positions.length);
+			int previous = 0;
+			for (int i = 0; i < this.positions.length; i++) {
+				writeVarInt(output, this.positions[i] - previous);
+				writeVarInt(output, tagIds[i]);
+				writeVarInt(output, lemmaIds[i]);
+				previous = this.positions[i];
+			}
+			return output.toByteArray();
+		}
+
+		private static int id(String string, Map<String, Integer> ids, List<String> dictionary) {
+			Integer id = ids.get(string);
+			if (id == null) {
+				id = dictionary.size();
+				ids.put(string, id);
+				dictionary.add(string);
+			}
+			return id;
+		}
+
+		private static Entry decode(ByteBuffer buffer) {
+			int tokens = readVarInt(buffer);
+			String[] dictionary = new String[readVarInt(buffer)];
+			for (int i = 0; i < dictionary.length; i++) {
+				int length = readVarInt(buffer);
+				dictionary[i] = new String(buffer.array(), buffer.position(), length, UTF_8);
+				buffer.position(buffer.position() + length);
+			}
+			int size = readVarInt(buffer);
+			int[] positions = new int[size];
+			String[] tags = new String[size];
+			String[] lemmata = new String[size];
+			int previous = 0;
+			for (int i = 0; i < size; i++) {
+				positions[i] = previous + readVarInt(buffer);
+				tags[i] = dictionary[readVarInt(buffer)];
+				lemmata[i] = dictionary[readVarInt(buffer)];
+				previous = positions[i];
+			}
+			return new Entry(tokens, positions, tags, lemmata);
+		}
+
+		private static void writeVarInt(ByteArrayOutputStream output, int value) {
+			while ((value & ~0x7F) != 0) {
+				output.write((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			output.write(value);
+		}
+
+		private static int readVarInt(ByteBuffer buffer) {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = buffer.get();
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return value;
+		}
+
+	}
+
+}
@@ -0,0 +1,58 @@
+package fr.univnantes.lina.uima.engines;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations in power of two buckets of
+ * nanoseconds: bucket i counts the durations in [2^i, 2^(i+1)).
+ */
+public class LatencyHistogram {
+
+	private static final int BUCKETS = 64;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	public void record(long nanos) {
+		int bucket = nanos <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+		this.counts.incrementAndGet(bucket);
+	}
+
+	public long[] getCounts() {
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = this.counts.get(i);
+		}
+		return counts;
+	}
+
+	/*
+	 * Upper bound in ms of the bucket holding the given percentile,
+	 * 0 when nothing was recorded
+	 */
+	public double getPercentile(double percentile) {
+		long[] counts = this.getCounts();
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(total * percentile / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.scalb(1.0, i + 1) / 1000000;
+			}
+		}
+		return Double.POSITIVE_INFINITY;
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			this.counts.set(i, 0);
+		}
+	}
+
+}
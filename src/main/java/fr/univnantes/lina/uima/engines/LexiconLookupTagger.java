@@ -0,0 +1,258 @@
+package fr.univnantes.lina.uima.engines;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.annolab.tt4j.TokenAdapter;
+import org.annolab.tt4j.TokenHandler;
+import org.annolab.tt4j.TreeTaggerException;
+import org.annolab.tt4j.TreeTaggerWrapper;
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.util.Level;
+
+/**
+ * Looks tokens up in a lexicon in the JVM, without starting a TreeTagger
+ * process. This is a lexicon lookup tagger, not a replacement for
+ * TreeTagger: it does not read TreeTagger models and does not
+ * disambiguate words in context, so its tags differ from TreeTagger's
+ * on ambiguous and unknown words.
+ *
+ * The lexicon is in the format TreeTagger is trained from, one word per
+ * line followed by tab-separated "tag lemma" analyses. A word gets its
+ * first analysis, looking it up as is then lowercased. Unknown words get
+ * the most frequent tag of their longest known suffix, and no lemma.
+ *
+ * The tt4j wrapper interface lets the annotator drive it like a
+ * TreeTagger process. Lexicons are loaded once per file and shared by
+ * all the taggers.
+ */
+public class LexiconLookupTagger<O> extends TreeTaggerWrapper<O> {
+
+	public static final int MAX_SUFFIX_LENGTH = 5;
+
+	private static final Map<String, Lexicon> LEXICONS = new HashMap<String, Lexicon>();
+
+	private Lexicon lexicon;
+
+	/*
+	 * model is lexicon:encoding, the lexicon being absolute or relative to
+	 * the models or lib directory of the TreeTagger home
+	 */
+	@Override
+	public void setModel(String model) throws IOException {
+		int separator = model.lastIndexOf(':');
+		String path = separator < 0 ? model : model.substring(0, separator);
+		String encoding = separator < 0 ? "UTF-8" : model.substring(separator + 1);
+		this.lexicon = open(resolve(path), encoding);
+	}
+
+	static File resolve(String path) throws IOException {
+		File file = new File(path);
+		String home = System.getProperty("treetagger.home");
+		if (!file.isAbsolute() && home != null) {
+			for (String directory : new String[] { "models", "lib", "." }) {
+				File candidate = new File(new File(home, directory), path);
+				if (candidate.isFile()) {
+					return candidate;
+				}
+			}
+		}
+		if (!file.isFile()) {
+			throw new IOException("Unable to locate lexicon " + path);
+		}
+		return file;
+	}
+
+	private static Lexicon open(File file, String encoding) throws IOException {
+		String path = file.getCanonicalPath();
+		String key = path + ":" + file.lastModified() + ":" + encoding;
+		synchronized (LEXICONS) {
+			Lexicon lexicon = LEXICONS.get(key);
+			if (lexicon == null) {
+				long start = System.nanoTime();
+				lexicon = new Lexicon(file, encoding);
+				// a changed file replaces its previous version
+				for (Iterator<String> keys = LEXICONS.keySet().iterator(); keys.hasNext();) {
+					if (keys.next().startsWith(path + ":")) {
+						keys.remove();
+					}
+				}
+				LEXICONS.put(key, lexicon);
+				UIMAFramework.getLogger().log(Level.INFO, "Loaded " + lexicon.size() + " words from " + file + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+			}
+			return lexicon;
+		}
+	}
+
+	@Override
+	public void process(O[] tokens) throws IOException, TreeTaggerException {
+		this.process(Arrays.asList(tokens));
+	}
+
+	@Override
+	public void process(Collection<O> tokens) throws IOException, TreeTaggerException {
+		if (this.lexicon == null) {
+			throw new TreeTaggerException("No lexicon set");
+		}
+		TokenAdapter<O> adapter = this.getAdapter();
+		TokenHandler<O> handler = this.getHandler();
+		for (O token : tokens) {
+			String text = adapter == null ? String.valueOf(token) : adapter.getText(token);
+			int entry = this.lexicon.find(text);
+			if (entry < 0) {
+				handler.token(token, this.lexicon.guess(text), null);
+			} else {
+				handler.token(token, this.lexicon.getTag(entry), this.lexicon.getLemma(entry));
+			}
+		}
+	}
+
+	@Override
+	public void destroy() {
+		// no process to stop
+	}
+
+	/*
+	 * Sorted words with the tag and lemma of their first analysis, as
+	 * indexes in dictionaries, and the most frequent tag by suffix
+	 */
+	private static class Lexicon {
+
+		private final String[] words;
+		private final int[] tags;
+		private final int[] lemmata;
+		private final String[] tagDictionary;
+		private final String[] lemmaDictionary;
+		private final String[] suffixes;
+		private final int[] suffixTags;
+		private final int defaultTag;
+
+		public Lexicon(File file, String encoding) throws IOException {
+			final TreeMap<String, int[]> entries = new TreeMap<String, int[]>();
+			final Map<String, Integer> tagIds = new HashMap<String, Integer>();
+			final Map<String, Integer> lemmaIds = new HashMap<String, Integer>();
+			final List<String> tagList = new ArrayList<String>();
+			final List<String> lemmaList = new ArrayList<String>();
+			final Map<String, int[]> suffixCounts = new HashMap<String, int[]>();
+			new LexiconReader() {
+
+				@Override
+				protected void entry(String word, String tagAsString, String lemmaAsString) {
+					if (entries.containsKey(word)) {
+						return;
+					}
+					int tag = id(tagAsString, tagIds, tagList);
+					int lemma = id(lemmaAsString, lemmaIds, lemmaList);
+					entries.put(word, new int[] { tag, lemma });
+					String lowerCase = word.toLowerCase(Locale.ROOT);
+					for (int length = 1; length <= MAX_SUFFIX_LENGTH && length < lowerCase.length(); length++) {
+						String key = lowerCase.substring(lowerCase.length() - length) + '\t' + tag;
+						int[] count = suffixCounts.get(key);
+						if (count == null) {
+							suffixCounts.put(key, new int[] { 1 });
+						} else {
+							count[0]++;
+						}
+					}
+				}
+			}.read(file, encoding);
+			this.words = new String[entries.size()];
+			this.tags = new int[entries.size()];
+			this.lemmata = new int[entries.size()];
+			int i = 0;
+			int[] tagCounts = new int[tagList.size()];
+			for (Map.Entry<String, int[]> entry : entries.entrySet()) {
+				this.words[i] = entry.getKey();
+				this.tags[i] = entry.getValue()[0];
+				this.lemmata[i] = entry.getValue()[1];
+				tagCounts[this.tags[i]]++;
+				i++;
+			}
+			this.tagDictionary = tagList.toArray(new String[tagList.size()]);
+			this.lemmaDictionary = lemmaList.toArray(new String[lemmaList.size()]);
+			int defaultTag = -1;
+			for (int tag = 0; tag < tagCounts.length; tag++) {
+				if (defaultTag < 0 || tagCounts[tag] > tagCounts[defaultTag]) {
+					defaultTag = tag;
+				}
+			}
+			this.defaultTag = defaultTag;
+			TreeMap<String, int[]> best = new TreeMap<String, int[]>();
+			for (Map.Entry<String, int[]> entry : suffixCounts.entrySet()) {
+				int separator = entry.getKey().lastIndexOf('\t');
+				String suffix = entry.getKey().substring(0, separator);
+				int tag = Integer.parseInt(entry.getKey().substring(separator + 1));
+				int[] current = best.get(suffix);
+				if (current == null || entry.getValue()[0] > current[1]) {
+					best.put(suffix, new int[] { tag, entry.getValue()[0] });
+				}
+			}
+			this.suffixes = new String[best.size()];
+			this.suffixTags = new int[best.size()];
+			i = 0;
+			for (Map.Entry<String, int[]> entry : best.entrySet()) {
+				this.suffixes[i] = entry.getKey();
+				this.suffixTags[i] = entry.getValue()[0];
+				i++;
+			}
+		}
+
+		private static int id(String string, Map<String, Integer> ids, List<String> dictionary) {
+			Integer id = ids.get(string);
+			if (id == null) {
+				id = dictionary.size();
+				ids.put(string, id);
+				dictionary.add(string);
+			}
+			return id;
+		}
+
+		public int size() {
+			return this.words.length;
+		}
+
+		/*
+		 * Negative when the word is unknown
+		 */
+		public int find(String word) {
+			int entry = Arrays.binarySearch(this.words, word);
+			if (entry < 0) {
+				String lowerCase = word.toLowerCase(Locale.ROOT);
+				if (!lowerCase.equals(word)) {
+					entry = Arrays.binarySearch(this.words, lowerCase);
+				}
+			}
+			return entry;
+		}
+
+		public String getTag(int entry) {
+			return this.tagDictionary[this.tags[entry]];
+		}
+
+		public String getLemma(int entry) {
+			return this.lemmaDictionary[this.lemmata[entry]];
+		}
+
+		public String guess(String word) {
+			String lowerCase = word.toLowerCase(Locale.ROOT);
+			for (int length = Math.min(MAX_SUFFIX_LENGTH, lowerCase.length() - 1); length > 0; length--) {
+				int suffix = Arrays.binarySearch(this.suffixes, lowerCase.substring(lowerCase.length() - length));
+				if (suffix >= 0) {
+					return this.tagDictionary[this.suffixTags[suffix]];
+				}
+			}
+			return this.defaultTag < 0 ? null : this.tagDictionary[this.defaultTag];
+		}
+
+	}
+
+}
@@ -0,0 +1,39 @@
+package fr.univnantes.lina.uima.engines;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+/**
+ * Reads a lexicon in the format TreeTagger is trained from, one word per
+ * line followed by tab-separated "tag lemma" analyses, a missing lemma
+ * meaning the word itself. Only the first analysis of a line is read,
+ * and lines without analysis are skipped.
+ */
+abstract class LexiconReader {
+
+	/*
+	 * Called for each line, a word may come again on later lines
+	 */
+	protected abstract void entry(String word, String tag, String lemma);
+
+	public void read(File file, String encoding) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), encoding));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t");
+				if (fields.length < 2) {
+					continue;
+				}
+				String[] analysis = fields[1].trim().split(" +", 2);
+				this.entry(fields[0], analysis[0], analysis.length > 1 ? analysis[1] : fields[0]);
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+}
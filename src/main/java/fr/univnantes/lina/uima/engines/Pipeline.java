@@ -0,0 +1,95 @@
+package fr.univnantes.lina.uima.engines;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+
+/**
+ * Runs the work of up to window items ahead on its own threads while the
+ * calling thread closes the first item with its result, in item order.
+ * Opening an item waits for the first one once the window is full.
+ *
+ * Items are opened and closed by the calling thread only, so that only
+ * the work runs on the pipeline threads.
+ */
+class Pipeline<T> {
+
+	/*
+	 * What is done with each item on the calling thread
+	 */
+	interface Stages<I, T> {
+
+		/*
+		 * The work of an item, null when it has none
+		 */
+		Callable<T> open(I item) throws AnalysisEngineProcessException;
+
+		/*
+		 * result is null when the item had no work
+		 */
+		void close(I item, T result) throws AnalysisEngineProcessException;
+
+	}
+
+	private final int window;
+	private final ExecutorService executor;
+
+	public Pipeline(final String name, int window) {
+		this.window = window;
+		this.executor = Executors.newFixedThreadPool(window, new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	public <I> void run(Iterator<I> items, Stages<I, T> stages) throws AnalysisEngineProcessException {
+		LinkedList<I> opened = new LinkedList<I>();
+		LinkedList<Future<T>> results = new LinkedList<Future<T>>();
+		try {
+			while (items.hasNext() || !opened.isEmpty()) {
+				while (opened.size() < this.window && items.hasNext()) {
+					I item = items.next();
+					Callable<T> work = stages.open(item);
+					opened.add(item);
+					results.add(work == null ? null : this.executor.submit(work));
+				}
+				I item = opened.removeFirst();
+				Future<T> result = results.removeFirst();
+				stages.close(item, result == null ? null : result.get());
+			}
+		} catch (ExecutionException e) {
+			throw new AnalysisEngineProcessException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AnalysisEngineProcessException(e);
+		} finally {
+			// do not leave pipeline threads at work once the items are handed back
+			for (Future<T> result : results) {
+				if (result != null) {
+					try {
+						result.get();
+					} catch (Exception e) {
+						// already failed
+					}
+				}
+			}
+		}
+	}
+
+	public void shutdown() {
+		this.executor.shutdown();
+	}
+
+}
@@ -0,0 +1,103 @@
+package fr.univnantes.lina.uima.engines;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Pattern;
+
+/**
+ * Tags tokens whose analysis is known beforehand, so that they need not
+ * be sent to TreeTagger: numbers, punctuation, URLs, or the words of a
+ * lexicon.
+ *
+ * A rule is "regex&lt;TAB&gt;tag[&lt;TAB&gt;lemma]", the regex matching the
+ * whole token, a missing lemma meaning the token itself. Lexicon lines
+ * are "word&lt;TAB&gt;tag lemma", as in TreeTagger lexicons, and only the
+ * first analysis of a word is used. The lexicon is looked up first, then
+ * the rules in order. The number of tokens each rule tagged is counted.
+ */
+public class PreTagger {
+
+	public static final String LEXICON = "lexicon";
+
+	private final List<String> rules = new ArrayList<String>();
+	private final List<Pattern> patterns = new ArrayList<Pattern>();
+	private final List<String> tags = new ArrayList<String>();
+	private final List<String> lemmas = new ArrayList<String>();
+	private final Map<String, TokenCache.Entry> lexicon = new HashMap<String, TokenCache.Entry>();
+	private final AtomicLongArray counts;
+
+	public PreTagger(String[] rules, File lexicon) throws IOException {
+		for (String rule : rules) {
+			String[] fields = rule.split("\t");
+			if (fields.length < 2 || fields.length > 3 || fields[1].isEmpty()) {
+				throw new IllegalArgumentException("Pre-tagging rule " + rule + " is not regex<TAB>tag[<TAB>lemma]");
+			}
+			this.rules.add(rule);
+			this.patterns.add(Pattern.compile(fields[0]));
+			this.tags.add(fields[1]);
+			this.lemmas.add(fields.length == 3 ? fields[2] : null);
+		}
+		if (lexicon != null) {
+			this.load(lexicon);
+		}
+		this.counts = new AtomicLongArray(this.rules.size() + 1);
+	}
+
+	private void load(File file) throws IOException {
+		new LexiconReader() {
+
+			@Override
+			protected void entry(String word, String tag, String lemma) {
+				if (!lexicon.containsKey(word)) {
+					lexicon.put(word, new TokenCache.Entry(tag, lemma));
+				}
+			}
+		}.read(file, "UTF-8");
+	}
+
+	/*
+	 * null when the token is left to TreeTagger
+	 */
+	public TokenCache.Entry tag(String text) {
+		TokenCache.Entry entry = this.lexicon.get(text);
+		if (entry != null) {
+			this.counts.incrementAndGet(this.rules.size());
+			return entry;
+		}
+		for (int i = 0; i < this.patterns.size(); i++) {
+			if (this.patterns.get(i).matcher(text).matches()) {
+				this.counts.incrementAndGet(i);
+				String lemma = this.lemmas.get(i);
+				return new TokenCache.Entry(this.tags.get(i), lemma == null ? text : lemma);
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Tokens tagged per rule, in order, then by the lexicon
+	 */
+	public Map<String, Long> getCounts() {
+		Map<String, Long> counts = new LinkedHashMap<String, Long>();
+		for (int i = 0; i < this.rules.size(); i++) {
+			counts.put(this.rules.get(i), this.counts.get(i));
+		}
+		counts.put(LEXICON, this.counts.get(this.rules.size()));
+		return counts;
+	}
+
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < this.counts.length(); i++) {
+			count += this.counts.get(i);
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,237 @@
+package fr.univnantes.lina.uima.engines;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.annolab.tt4j.TokenAdapter;
+import org.annolab.tt4j.TreeTaggerException;
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.apache.uima.util.Level;
+
+import fr.univnantes.lina.uima.models.TreeTaggerProcessPool;
+
+/**
+ * Runs round-trips on pooled processes: kills a process that does not
+ * answer in time, discards a process that failed in any way, spaces the
+ * retries of a failed round-trip, and applies the failure policy to the
+ * tokens still untagged after the last one.
+ */
+class ProcessSupervisor {
+
+	enum FailurePolicy { SKIP, FAIL, FALLBACK }
+
+	private final TreeTaggerProcessPool pool;
+	private final TreeTaggerMetrics metrics;
+	private final boolean countStarts;
+	private long timeout;
+	private long timeoutPerToken;
+	private int maxRetries;
+	private long retryBackoff;
+	private FailurePolicy failurePolicy = FailurePolicy.SKIP;
+	private String fallbackTag;
+	private ScheduledExecutorService watchdog;
+	// processes killed and not yet replaced
+	private final AtomicInteger discarded = new AtomicInteger();
+
+	/*
+	 * countStarts: whether the backend starts processes, whose starts are 
+	 * counted by the metrics
+	 */
+	public ProcessSupervisor(TreeTaggerProcessPool pool, TreeTaggerMetrics metrics, boolean countStarts) {
+		this.pool = pool;
+		this.metrics = metrics;
+		this.countStarts = countStarts;
+	}
+
+	/*
+	 * A round-trip taking longer than timeout ms plus timeoutPerToken ms 
+	 * per token kills its process, 0 disables the watchdog
+	 */
+	public void setTimeout(long timeout, long timeoutPerToken) {
+		this.timeout = timeout;
+		this.timeoutPerToken = timeoutPerToken;
+	}
+
+	public void setRetries(int maxRetries, long retryBackoff) {
+		this.maxRetries = maxRetries;
+		this.retryBackoff = retryBackoff;
+	}
+
+	public int getMaxRetries() {
+		return this.maxRetries;
+	}
+
+	public void setFailurePolicy(FailurePolicy failurePolicy, String fallbackTag) {
+		this.failurePolicy = failurePolicy;
+		this.fallbackTag = fallbackTag;
+	}
+
+	/*
+	 * Whether a failed round-trip is retried or recovered from, so that 
+	 * what it wrote would have to be taken back
+	 */
+	public boolean isRecovering() {
+		return this.maxRetries > 0 || this.failurePolicy != FailurePolicy.FAIL;
+	}
+
+	public void start() {
+		if (this.watchdog == null && (this.timeout > 0 || this.timeoutPerToken > 0)) {
+			this.watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "TreeTaggerWrapper-watchdog");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	public void shutdown() {
+		if (this.watchdog != null) {
+			this.watchdog.shutdown();
+		}
+	}
+
+	/*
+	 * Waits before a retry, twice as long as before the previous one
+	 */
+	public void backOff(int attempt, Exception failure) throws InterruptedException {
+		if (attempt > 0) {
+			long delay = this.retryBackoff << (attempt - 1);
+			UIMAFramework.getLogger().log(Level.WARNING, "Retrying in " + delay + " ms after: " + failure.getMessage());
+			Thread.sleep(delay);
+		}
+	}
+
+	/*
+	 * One round-trip on a process borrowed from the pool, killed by the
+	 * watchdog when it does not answer in time. A process that failed in
+	 * any way is discarded instead of going back to the pool.
+	 */
+	public void roundTrip(final org.annolab.tt4j.TreeTaggerWrapper<Annotation> wrapper, Tokens tokens, AnnotationHandler handler, TokenAdapter<Annotation> adapter) throws IOException, TreeTaggerException {
+		int starts = wrapper.getRestartCount();
+		final AtomicBoolean expired = new AtomicBoolean();
+		long deadline = this.timeout + this.timeoutPerToken * tokens.size();
+		ScheduledFuture<?> kill = null;
+		if (this.watchdog != null) {
+			kill = this.watchdog.schedule(new Runnable() {
+
+				@Override
+				public void run() {
+					expired.set(true);
+					wrapper.destroy();
+				}
+			}, deadline, TimeUnit.MILLISECONDS);
+		}
+		boolean healthy = false;
+		try {
+			handler.expect(tokens);
+			wrapper.setHandler(handler);
+			wrapper.setAdapter(adapter);
+			wrapper.setPerformanceMode(true);
+			wrapper.setMaximumTokenLength(Tokens.MAXIMUM_TOKEN_LENGTH);
+			wrapper.process(tokens);
+			handler.flush();
+			healthy = true;
+		} catch (TreeTaggerException e) {
+			if (expired.get()) {
+				throw new TreeTaggerException("TreeTagger did not answer within " + deadline + " ms");
+			}
+			throw e;
+		} catch (IOException e) {
+			if (expired.get()) {
+				throw new TreeTaggerException("TreeTagger did not answer within " + deadline + " ms");
+			}
+			throw e;
+		} finally {
+			handler.discard();
+			if (kill != null) {
+				kill.cancel(false);
+			}
+			this.started(starts, wrapper.getRestartCount());
+			if (healthy && !expired.get()) {
+				this.pool.release(wrapper);
+			} else {
+				if (wrapper.getRestartCount() > 0) {
+					this.discarded.incrementAndGet();
+				}
+				this.pool.invalidate(wrapper);
+			}
+		}
+		if (expired.get()) {
+			throw new TreeTaggerException("TreeTagger did not answer within " + deadline + " ms");
+		}
+	}
+
+	/*
+	 * Applies the failure policy to tokens that could not be tagged: 
+	 * throws under fail, writes the fallback tags with the handler under 
+	 * fallback
+	 */
+	public void fail(Tokens tokens, Exception failure, AnnotationHandler handler, boolean bulk) throws AnalysisEngineProcessException {
+		if (this.failurePolicy == FailurePolicy.FAIL) {
+			throw new AnalysisEngineProcessException(failure);
+		}
+		Throwable c = failure.getCause();
+		if (c == null) {
+			UIMAFramework.getLogger().log(Level.WARNING,failure.getMessage());
+		} else {
+			UIMAFramework.getLogger().log(Level.WARNING,c.getMessage());				
+		}
+		if (this.failurePolicy == FailurePolicy.FALLBACK) {
+			for (Annotation token : tokens) {
+				if (token != Tokens.BOUNDARY) {
+					writeOne(handler, bulk, token, this.fallbackTag, token.getCoveredText());
+				}
+			}
+			for (int i = 0; i < tokens.getCachedTokens().size(); i++) {
+				TokenCache.Entry entry = tokens.getCachedEntries().get(i);
+				handler.setCertain(entry.getTag());
+				writeOne(handler, bulk, tokens.getCachedTokens().get(i), entry.getTag(), entry.getLemma());
+			}
+			handler.takeWriteNanos();
+		}
+	}
+
+	private static void writeOne(AnnotationHandler handler, boolean bulk, Annotation token, String tag, String lemma) {
+		if (bulk) {
+			handler.create(token, tag, lemma);
+		} else {
+			handler.write(token, tag, lemma);
+		}
+	}
+
+	/*
+	 * tt4j counts every start of its process, the first one included. The
+	 * first start of a process replacing a discarded one is a restart. The
+	 * lookup backend starts no process.
+	 */
+	private void started(int before, int after) {
+		if (this.countStarts && after > before) {
+			int processes = before == 0 && !this.replacesDiscarded() ? 1 : 0;
+			this.metrics.started(processes, after - before - processes);
+		}
+	}
+
+	private boolean replacesDiscarded() {
+		int count;
+		do {
+			count = this.discarded.get();
+			if (count == 0) {
+				return false;
+			}
+		} while (!this.discarded.compareAndSet(count, count - 1));
+		return true;
+	}
+
+}
@@ -0,0 +1,254 @@
+package fr.univnantes.lina.uima.engines;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.FSIterator;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.cas.FloatArrayFS;
+import org.apache.uima.cas.IntArrayFS;
+import org.apache.uima.cas.Type;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+
+import fr.univnantes.lina.uima.models.TreeTaggerTagset;
+
+/**
+ * Records what the handler writes for the documents of a batch, for what
+ * is written once they are tagged: the document tag IDs and
+ * probabilities, the tagging output, and the document cache.
+ *
+ * Only the documents added since the recorder was opened are recorded.
+ */
+class Recorder {
+
+	private final boolean lemmata;
+	private final int maxAlternatives;
+	private Type tokenType;
+	private Type tagIdsType;
+	private Feature tagIdsFeature;
+	private Type probabilitiesType;
+	private Feature probabilitiesFeature;
+	private TaggingOutput output;
+	private Type outputIdType;
+	private Feature outputIdFeature;
+	private TreeTaggerTagset tagset;
+	private Map<CAS, Recording> recordings;
+
+	/*
+	 * lemmata: whether lemmata are written to the output, maxAlternatives:
+	 * the probabilities recorded per token
+	 */
+	public Recorder(boolean lemmata, int maxAlternatives) {
+		this.lemmata = lemmata;
+		this.maxAlternatives = maxAlternatives;
+	}
+
+	public void setTokenType(Type tokenType) {
+		this.tokenType = tokenType;
+	}
+
+	/*
+	 * The IntegerArray feature receiving the tag IDs of a document, none
+	 * when type is null
+	 */
+	public void setDocumentTagIds(Type type, Feature feature) {
+		this.tagIdsType = type;
+		this.tagIdsFeature = feature;
+	}
+
+	/*
+	 * The FloatArray feature receiving the probabilities of a document, 
+	 * none when type is null
+	 */
+	public void setDocumentProbabilities(Type type, Feature feature) {
+		this.probabilitiesType = type;
+		this.probabilitiesFeature = feature;
+	}
+
+	public void setOutput(TaggingOutput output) {
+		this.output = output;
+	}
+
+	/*
+	 * The feature of the id documents are written to the output with, 
+	 * none when type is null
+	 */
+	public void setOutputId(Type type, Feature feature) {
+		this.outputIdType = type;
+		this.outputIdFeature = feature;
+	}
+
+	public void setTagset(TreeTaggerTagset tagset) {
+		this.tagset = tagset;
+	}
+
+	/*
+	 * What is written from the recordings of all the documents
+	 */
+	public boolean isRecordingAll() {
+		return this.tagIdsType != null || this.probabilitiesType != null || this.output != null;
+	}
+
+	public void open() {
+		this.recordings = new IdentityHashMap<CAS, Recording>();
+	}
+
+	public void close() {
+		this.recordings = null;
+	}
+
+	public boolean isOpen() {
+		return this.recordings != null;
+	}
+
+	public void add(JCas cas) {
+		this.recordings.put(cas.getCas(), new Recording());
+	}
+
+	public Recording get(JCas cas) {
+		return this.recordings.get(cas.getCas());
+	}
+
+	/*
+	 * Ignored for the documents not added
+	 */
+	public void record(Annotation annotation, String tag, String lemma, float[] probabilities, int offset, int count) {
+		if (this.recordings != null) {
+			Recording recording = this.recordings.get(annotation.getCAS());
+			if (recording != null) {
+				recording.add(annotation, tag, lemma);
+				if (this.probabilitiesType != null) {
+					recording.addProbabilities(probabilities, offset, count, this.maxAlternatives);
+				}
+			}
+		}
+	}
+
+	public void write(List<JCas> batch) throws AnalysisEngineProcessException {
+		for (JCas cas : batch) {
+			if (this.tagIdsType != null) {
+				this.writeDocumentTagIds(cas);
+			}
+			if (this.probabilitiesType != null) {
+				this.writeDocumentProbabilities(cas);
+			}
+			if (this.output != null) {
+				this.writeOutput(cas);
+			}
+		}
+	}
+
+	/*
+	 * Positions of the tokens of a CAS in the token index, by address
+	 */
+	public Map<Integer, Integer> getPositions(JCas cas) {
+		Map<Integer, Integer> positions = new HashMap<Integer, Integer>();
+		int count = 0;
+		for (Annotation token : cas.getAnnotationIndex(this.tokenType)) {
+			positions.put(token.getAddress(), count++);
+		}
+		return positions;
+	}
+
+	/*
+	 * Tokens are written in index order, whatever order they were tagged in
+	 */
+	private void writeOutput(JCas cas) throws AnalysisEngineProcessException {
+		Recording recording = this.get(cas);
+		Map<Integer, Integer> positions = this.getPositions(cas);
+		int size = recording.size();
+		Integer[] order = new Integer[size];
+		final int[] keys = new int[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+			keys[i] = positions.get(recording.getAnnotation(i).getAddress());
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+
+			@Override
+			public int compare(Integer a, Integer b) {
+				return keys[a] < keys[b] ? -1 : (keys[a] == keys[b] ? 0 : 1);
+			}
+		});
+		int[] begins = new int[size];
+		int[] ends = new int[size];
+		String[] tags = new String[size];
+		String[] lemmata = new String[size];
+		for (int i = 0; i < size; i++) {
+			Annotation token = recording.getAnnotation(order[i]);
+			begins[i] = token.getBegin();
+			ends[i] = token.getEnd();
+			tags[i] = recording.getTag(order[i]);
+			lemmata[i] = this.lemmata ? recording.getLemma(order[i]) : null;
+		}
+		String id = null;
+		if (this.outputIdType != null) {
+			FSIterator<FeatureStructure> iterator = cas.getCas().getIndexRepository().getAllIndexedFS(this.outputIdType);
+			if (iterator.hasNext()) {
+				id = iterator.next().getStringValue(this.outputIdFeature);
+			}
+		}
+		try {
+			this.output.write(id, begins, ends, tags, lemmata);
+		} catch (IOException e) {
+			throw new AnalysisEngineProcessException(e);
+		}
+	}
+
+	private void writeDocumentTagIds(JCas cas) {
+		Recording recording = this.get(cas);
+		Map<Integer, Integer> positions = this.getPositions(cas);
+		int[] ids = new int[positions.size()];
+		Arrays.fill(ids, TreeTaggerTagset.NO_TAG);
+		for (int i = 0; i < recording.size(); i++) {
+			ids[positions.get(recording.getAnnotation(i).getAddress())] = this.tagset.getId(recording.getTag(i));
+		}
+		CAS view = cas.getCas();
+		IntArrayFS array = view.createIntArrayFS(ids.length);
+		array.copyFromArray(ids, 0, 0, ids.length);
+		this.setDocumentFeature(view, this.tagIdsType, this.tagIdsFeature, array);
+	}
+
+	private void writeDocumentProbabilities(JCas cas) {
+		Recording recording = this.get(cas);
+		Map<Integer, Integer> positions = this.getPositions(cas);
+		int stride = this.maxAlternatives;
+		float[] probabilities = new float[positions.size() * stride];
+		Arrays.fill(probabilities, Float.NaN);
+		for (int i = 0; i < recording.size(); i++) {
+			int position = positions.get(recording.getAnnotation(i).getAddress());
+			System.arraycopy(recording.getProbabilities(), i * stride, probabilities, position * stride, stride);
+		}
+		CAS view = cas.getCas();
+		FloatArrayFS array = view.createFloatArrayFS(probabilities.length);
+		array.copyFromArray(probabilities, 0, 0, probabilities.length);
+		this.setDocumentFeature(view, this.probabilitiesType, this.probabilitiesFeature, array);
+	}
+
+	/*
+	 * Sets the feature of the first feature structure of the type, or of
+	 * one created over the whole document
+	 */
+	private void setDocumentFeature(CAS view, Type type, Feature feature, FeatureStructure value) {
+		FSIterator<FeatureStructure> iterator = view.getIndexRepository().getAllIndexedFS(type);
+		if (iterator.hasNext()) {
+			iterator.next().setFeatureValue(feature, value);
+		} else {
+			FeatureStructure structure = view.getTypeSystem().subsumes(view.getAnnotationType(), type)
+					? view.createAnnotation(type, 0, view.getDocumentText() == null ? 0 : view.getDocumentText().length())
+					: view.createFS(type);
+			structure.setFeatureValue(feature, value);
+			view.addFsToIndexes(structure);
+		}
+	}
+
+}
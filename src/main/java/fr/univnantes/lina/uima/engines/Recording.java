@@ -0,0 +1,66 @@
+package fr.univnantes.lina.uima.engines;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.uima.jcas.tcas.Annotation;
+
+/**
+ * What the handler wrote for a document, in the order it was written
+ */
+class Recording {
+
+	private final List<Annotation> annotations = new ArrayList<Annotation>();
+	private final List<String> tags = new ArrayList<String>();
+	private final List<String> lemmata = new ArrayList<String>();
+
+	/*
+	 * stride probabilities per token, only kept for
+	 * DocumentProbabilitiesFeature
+	 */
+	private float[] probabilities = new float[0];
+
+	public void add(Annotation annotation, String tag, String lemma) {
+		this.annotations.add(annotation);
+		this.tags.add(tag);
+		this.lemmata.add(lemma);
+	}
+
+	/*
+	 * Probabilities of the last token added, NaN when it has none
+	 */
+	public void addProbabilities(float[] source, int offset, int count, int stride) {
+		int at = (this.annotations.size() - 1) * stride;
+		if (at + stride > this.probabilities.length) {
+			this.probabilities = Arrays.copyOf(this.probabilities, Math.max(this.probabilities.length * 2, at + stride));
+		}
+		if (count == 0) {
+			Arrays.fill(this.probabilities, at, at + stride, Float.NaN);
+		} else {
+			System.arraycopy(source, offset, this.probabilities, at, count);
+			Arrays.fill(this.probabilities, at + count, at + stride, 0f);
+		}
+	}
+
+	public int size() {
+		return this.annotations.size();
+	}
+
+	public Annotation getAnnotation(int i) {
+		return this.annotations.get(i);
+	}
+
+	public String getTag(int i) {
+		return this.tags.get(i);
+	}
+
+	public String getLemma(int i) {
+		return this.lemmata.get(i);
+	}
+
+	public float[] getProbabilities() {
+		return this.probabilities;
+	}
+
+}
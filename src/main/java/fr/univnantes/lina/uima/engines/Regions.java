@@ -0,0 +1,86 @@
+package fr.univnantes.lina.uima.engines;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.uima.cas.Type;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+
+/**
+ * The spans of the annotations of some types in document order,
+ * overlapping ones merged
+ */
+class Regions {
+
+	private final JCas cas;
+	private final List<int[]> spans = new ArrayList<int[]>();
+	// null for merged spans
+	private final List<Annotation> annotations = new ArrayList<Annotation>();
+	private int cursor;
+
+	public Regions(JCas cas, Type[] types) {
+		this.cas = cas;
+		List<Annotation> annotations = new ArrayList<Annotation>();
+		for (Type type : types) {
+			for (Annotation annotation : cas.getAnnotationIndex(type)) {
+				annotations.add(annotation);
+			}
+		}
+		if (types.length > 1) {
+			Collections.sort(annotations, new Comparator<Annotation>() {
+
+				@Override
+				public int compare(Annotation a, Annotation b) {
+					return a.getBegin() < b.getBegin() ? -1 : (a.getBegin() == b.getBegin() ? 0 : 1);
+				}
+			});
+		}
+		for (Annotation annotation : annotations) {
+			int last = this.spans.size() - 1;
+			if (last >= 0 && annotation.getBegin() < this.spans.get(last)[1]) {
+				if (annotation.getEnd() > this.spans.get(last)[1]) {
+					this.spans.get(last)[1] = annotation.getEnd();
+					this.annotations.set(last, null);
+				}
+			} else {
+				this.spans.add(new int[] { annotation.getBegin(), annotation.getEnd() });
+				this.annotations.add(annotation);
+			}
+		}
+	}
+
+	public int size() {
+		return this.spans.size();
+	}
+
+	/*
+	 * The annotation of a span, or an unindexed one covering a merged
+	 * span
+	 */
+	public Annotation get(int i) {
+		Annotation annotation = this.annotations.get(i);
+		return annotation == null ? new Annotation(this.cas, this.getBegin(i), this.getEnd(i)) : annotation;
+	}
+
+	public int getBegin(int i) {
+		return this.spans.get(i)[0];
+	}
+
+	public int getEnd(int i) {
+		return this.spans.get(i)[1];
+	}
+
+	/*
+	 * Annotations must be given in document order
+	 */
+	public boolean covers(Annotation annotation) {
+		while (this.cursor < this.spans.size() && this.spans.get(this.cursor)[1] <= annotation.getBegin()) {
+			this.cursor++;
+		}
+		return this.cursor < this.spans.size() && this.spans.get(this.cursor)[0] <= annotation.getBegin() && annotation.getEnd() <= this.spans.get(this.cursor)[1];
+	}
+
+}
@@ -0,0 +1,115 @@
+package fr.univnantes.lina.uima.engines;
+
+import org.apache.uima.jcas.tcas.Annotation;
+
+/**
+ * Results of a round-trip buffered by a handler, waiting to be written by
+ * the calling thread
+ */
+class Results {
+
+	private final Tokens tokens;
+	private final Annotation[] annotations;
+	private final String[] tags;
+	private final String[] lemmata;
+	private int size;
+
+	/*
+	 * maxAlternatives slots per token, null without probabilities
+	 */
+	private final int maxAlternatives;
+	private final String[] alternativeTags;
+	private final float[] alternativeProbabilities;
+	private final int[] alternativeCounts;
+
+	/*
+	 * Set when the tokens could not be tagged
+	 */
+	private Exception failure;
+
+	/*
+	 * maxAlternatives is 0 without probabilities
+	 */
+	public Results(Tokens tokens, int maxAlternatives) {
+		this.tokens = tokens;
+		int capacity = tokens.size();
+		this.annotations = new Annotation[capacity];
+		this.tags = new String[capacity];
+		this.lemmata = new String[capacity];
+		this.maxAlternatives = maxAlternatives;
+		if (maxAlternatives > 0) {
+			this.alternativeTags = new String[capacity * maxAlternatives];
+			this.alternativeProbabilities = new float[capacity * maxAlternatives];
+			this.alternativeCounts = new int[capacity];
+		} else {
+			this.alternativeTags = null;
+			this.alternativeProbabilities = null;
+			this.alternativeCounts = null;
+		}
+	}
+
+	public Tokens getTokens() {
+		return this.tokens;
+	}
+
+	public Exception getFailure() {
+		return this.failure;
+	}
+
+	public void setFailure(Exception failure) {
+		this.failure = failure;
+	}
+
+	public void add(Annotation annotation, String tag, String lemma) {
+		this.annotations[this.size] = annotation;
+		this.tags[this.size] = tag;
+		this.lemmata[this.size] = lemma;
+		this.size++;
+	}
+
+	/*
+	 * Alternatives of the last token added
+	 */
+	public void addAlternatives(String[] tags, float[] probabilities, int count) {
+		int offset = (this.size - 1) * this.maxAlternatives;
+		System.arraycopy(tags, 0, this.alternativeTags, offset, count);
+		System.arraycopy(probabilities, 0, this.alternativeProbabilities, offset, count);
+		this.alternativeCounts[this.size - 1] = count;
+	}
+
+	private void setAlternatives(AnnotationHandler handler, int i) {
+		if (this.alternativeCounts != null) {
+			handler.setAlternatives(this.alternativeTags, this.alternativeProbabilities, i * this.maxAlternatives, this.alternativeCounts[i]);
+		}
+	}
+
+	public void write(AnnotationHandler handler) {
+		for (int i = 0; i < this.size; i++) {
+			this.setAlternatives(handler, i);
+			handler.write(this.annotations[i], this.tags[i], this.lemmata[i]);
+		}
+		this.tokens.writeCached(handler);
+	}
+
+	/*
+	 * Creates the annotations of both tagged and cached tokens, in the
+	 * order tokens were walked
+	 */
+	public void create(AnnotationHandler handler) {
+		int next = 0;
+		int cached = 0;
+		for (int position = 0; position < this.tokens.getPositions(); position++) {
+			if (this.tokens.isCached(position)) {
+				TokenCache.Entry entry = this.tokens.getCachedEntries().get(cached);
+				handler.setCertain(entry.getTag());
+				handler.create(this.tokens.getCachedTokens().get(cached), entry.getTag(), entry.getLemma());
+				cached++;
+			} else if (!this.tokens.isSkipped(position) && !this.tokens.isBoundary(position) && next < this.size) {
+				this.setAlternatives(handler, next);
+				handler.create(this.annotations[next], this.tags[next], this.lemmata[next]);
+				next++;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,34 @@
+package fr.univnantes.lina.uima.engines;
+
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+
+/**
+ * count tokens of a CAS from its first token, or from the start of the
+ * index when first is null
+ */
+class Segment {
+
+	private final JCas cas;
+	private final Annotation first;
+	private final int count;
+
+	public Segment(JCas cas, Annotation first, int count) {
+		this.cas = cas;
+		this.first = first;
+		this.count = count;
+	}
+
+	public JCas getCas() {
+		return this.cas;
+	}
+
+	public Annotation getFirst() {
+		return this.first;
+	}
+
+	public int getCount() {
+		return this.count;
+	}
+
+}
@@ -0,0 +1,57 @@
+package fr.univnantes.lina.uima.engines;
+
+/**
+ * A bounded open-addressing string pool that can intern a region of a
+ * string without allocating when the region is already known.
+ *
+ * Once the pool holds <code>capacity</code> strings, new strings are
+ * returned as is and not added.
+ */
+public class StringInterner {
+
+	private final int capacity;
+	private final String[] table;
+	private final int mask;
+	private int size;
+
+	public StringInterner(int capacity) {
+		this.capacity = capacity;
+		int length = 1;
+		while (length < capacity * 2) {
+			length <<= 1;
+		}
+		this.table = new String[length];
+		this.mask = length - 1;
+	}
+
+	public String intern(String string) {
+		return this.intern(string, 0, string.length());
+	}
+
+	public synchronized String intern(String string, int start, int end) {
+		int length = end - start;
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + string.charAt(i);
+		}
+		int index = (hash ^ (hash >>> 16)) & this.mask;
+		String candidate;
+		while ((candidate = this.table[index]) != null) {
+			if (candidate.length() == length && candidate.regionMatches(0, string, start, length)) {
+				return candidate;
+			}
+			index = (index + 1) & this.mask;
+		}
+		String interned = (start == 0 && end == string.length()) ? string : string.substring(start, end);
+		if (this.size < this.capacity) {
+			this.table[index] = interned;
+			this.size++;
+		}
+		return interned;
+	}
+
+	public synchronized int size() {
+		return this.size;
+	}
+
+}
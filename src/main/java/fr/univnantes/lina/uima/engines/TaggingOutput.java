@@ -0,0 +1,418 @@
+package fr.univnantes.lina.uima.engines;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+
+/**
+ * A compact binary file of the (begin, end, tag, lemma) of the tagged
+ * tokens of documents, written outside the CAS.
+ *
+ * Documents are appended as blocks prefixed with their length. A block
+ * holds the strings added to the dictionary of the file, then the id of
+ * the document and its tokens in columns: begin offsets as deltas, token
+ * lengths, tag IDs and lemma IDs, all as variable-length ints. A last
+ * block left incomplete by a crash is ignored by the {@link Reader}.
+ *
+ * Blocks are gathered in a large buffer written with a file channel.
+ * Within a JVM, {@link #open(File)} shares one instance per file, so
+ * that several annotators can append to the same file, and the file is
+ * closed by the {@link #close()} matching the last open. Opening it
+ * again then starts a new file.
+ */
+public class TaggingOutput implements Closeable {
+
+	private static final int MAGIC = 0x54545752; // TTWR
+	private static final int VERSION = 1;
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final Map<File, TaggingOutput> INSTANCES = new HashMap<File, TaggingOutput>();
+
+	public static TaggingOutput open(File file) throws IOException {
+		File canonical = file.getCanonicalFile();
+		synchronized (INSTANCES) {
+			TaggingOutput output = INSTANCES.get(canonical);
+			if (output == null) {
+				output = new TaggingOutput(canonical);
+				INSTANCES.put(canonical, output);
+			}
+			output.users++;
+			return output;
+		}
+	}
+
+	private final File file;
+	private final RandomAccessFile data;
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final Map<String, Integer> ids = new HashMap<String, Integer>();
+	private ByteBuffer block = ByteBuffer.allocate(1 << 16);
+	private int documents;
+	// guarded by INSTANCES
+	private int users;
+
+	/*
+	 * Truncates an existing file
+	 */
+	private TaggingOutput(File file) throws IOException {
+		if (file.getParentFile() != null && !file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+			throw new IOException("Cannot create " + file.getParentFile());
+		}
+		this.file = file;
+		this.data = new RandomAccessFile(file, "rw");
+		this.channel = this.data.getChannel();
+		this.channel.truncate(0);
+		this.buffer.putInt(MAGIC);
+		this.buffer.putInt(VERSION);
+	}
+
+	/*
+	 * Tokens in document order, a null tag or lemma being kept as such
+	 */
+	public synchronized void write(String id, int[] begins, int[] ends, String[] tags, String[] lemmata) throws IOException {
+		int size = begins.length;
+		this.block.clear();
+		List<String> added = new ArrayList<String>();
+		int[] tagIds = new int[size];
+		int[] lemmaIds = new int[size];
+		for (int i = 0; i < size; i++) {
+			tagIds[i] = this.getId(tags[i], added);
+			lemmaIds[i] = this.getId(lemmata[i], added);
+		}
+		this.putVarInt(added.size());
+		for (String string : added) {
+			this.putString(string);
+		}
+		this.putString(id == null ? "" : id);
+		this.putVarInt(size);
+		int previous = 0;
+		for (int i = 0; i < size; i++) {
+			this.putVarInt(begins[i] - previous);
+			previous = begins[i];
+		}
+		for (int i = 0; i < size; i++) {
+			this.putVarInt(ends[i] - begins[i]);
+		}
+		for (int i = 0; i < size; i++) {
+			this.putVarInt(tagIds[i]);
+		}
+		for (int i = 0; i < size; i++) {
+			this.putVarInt(lemmaIds[i]);
+		}
+		this.block.flip();
+		if (this.buffer.remaining() < 4 + this.block.remaining()) {
+			this.flushBuffer();
+		}
+		if (this.buffer.remaining() < 4 + this.block.remaining()) {
+			ByteBuffer length = ByteBuffer.allocate(4);
+			length.putInt(this.block.remaining()).flip();
+			this.writeFully(length);
+			this.writeFully(this.block);
+		} else {
+			this.buffer.putInt(this.block.remaining());
+			this.buffer.put(this.block);
+		}
+		this.documents++;
+	}
+
+	/*
+	 * 0 for null, the dictionary index + 1 otherwise
+	 */
+	private int getId(String string, List<String> added) {
+		if (string == null) {
+			return 0;
+		}
+		Integer id = this.ids.get(string);
+		if (id == null) {
+			id = this.ids.size() + 1;
+			this.ids.put(string, id);
+			added.add(string);
+		}
+		return id;
+	}
+
+	private void putString(String string) {
+		byte[] bytes = string.getBytes(UTF_8);
+		this.putVarInt(bytes.length);
+		this.ensure(bytes.length);
+		this.block.put(bytes);
+	}
+
+	private void putVarInt(int value) {
+		this.ensure(5);
+		while ((value & ~0x7F) != 0) {
+			this.block.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		this.block.put((byte) value);
+	}
+
+	private void ensure(int length) {
+		if (this.block.remaining() < length) {
+			ByteBuffer grown = ByteBuffer.allocate(Math.max(this.block.capacity() * 2, this.block.position() + length));
+			this.block.flip();
+			grown.put(this.block);
+			this.block = grown;
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		this.buffer.flip();
+		this.writeFully(this.buffer);
+		this.buffer.clear();
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			this.channel.write(buffer);
+		}
+	}
+
+	public synchronized void flush() throws IOException {
+		this.flushBuffer();
+		this.channel.force(false);
+	}
+
+	public synchronized int getDocuments() {
+		return this.documents;
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (INSTANCES) {
+			if (--this.users > 0) {
+				return;
+			}
+			INSTANCES.remove(this.file);
+		}
+		synchronized (this) {
+			if (this.channel.isOpen()) {
+				this.flushBuffer();
+				this.data.close();
+			}
+		}
+	}
+
+	/**
+	 * The tagged tokens of a document, decoded column by column.
+	 */
+	public static class Document {
+
+		private final String id;
+		private final int[] begins;
+		private final int[] ends;
+		private final int[] tagIds;
+		private final int[] lemmaIds;
+		private final String[] dictionary;
+
+		private Document(String id, int[] begins, int[] ends, int[] tagIds, int[] lemmaIds, String[] dictionary) {
+			this.id = id;
+			this.begins = begins;
+			this.ends = ends;
+			this.tagIds = tagIds;
+			this.lemmaIds = lemmaIds;
+			this.dictionary = dictionary;
+		}
+
+		public String getId() {
+			return this.id;
+		}
+
+		public int size() {
+			return this.begins.length;
+		}
+
+		public int getBegin(int i) {
+			return this.begins[i];
+		}
+
+		public int getEnd(int i) {
+			return this.ends[i];
+		}
+
+		public String getTag(int i) {
+			return this.tagIds[i] == 0 ? null : this.dictionary[this.tagIds[i] - 1];
+		}
+
+		public String getLemma(int i) {
+			return this.lemmaIds[i] == 0 ? null : this.dictionary[this.lemmaIds[i] - 1];
+		}
+
+		/*
+		 * Adds an annotation of the type per token, with its tag and lemma
+		 * features set, lemma being optional
+		 */
+		public void addTo(CAS cas, Type type, Feature tag, Feature lemma) {
+			for (int i = 0; i < this.begins.length; i++) {
+				AnnotationFS annotation = cas.createAnnotation(type, this.begins[i], this.ends[i]);
+				annotation.setStringValue(tag, this.getTag(i));
+				if (lemma != null) {
+					annotation.setStringValue(lemma, this.getLemma(i));
+				}
+				cas.addFsToIndexes(annotation);
+			}
+		}
+
+	}
+
+	/**
+	 * Iterates over the documents of a file, in the order they were written.
+	 */
+	public static class Reader implements Iterator<Document>, Closeable {
+
+		private final RandomAccessFile data;
+		private final FileChannel channel;
+		private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		private String[] dictionary = new String[16];
+		private int dictionarySize;
+		private Document next;
+		private boolean ended;
+
+		public Reader(File file) throws IOException {
+			this.data = new RandomAccessFile(file, "r");
+			this.channel = this.data.getChannel();
+			this.buffer.flip();
+			if (!this.fill(8) || this.buffer.getInt() != MAGIC) {
+				this.data.close();
+				throw new IOException(file + " is not a tagging output file");
+			}
+			int version = this.buffer.getInt();
+			if (version != VERSION) {
+				this.data.close();
+				throw new IOException("Unsupported version " + version + " of " + file);
+			}
+		}
+
+		/*
+		 * false at the end of the file
+		 */
+		private boolean fill(int length) throws IOException {
+			if (this.buffer.remaining() >= length) {
+				return true;
+			}
+			if (this.buffer.capacity() < length) {
+				ByteBuffer grown = ByteBuffer.allocateDirect(length);
+				grown.put(this.buffer);
+				this.buffer = grown;
+			} else {
+				this.buffer.compact();
+			}
+			while (this.buffer.position() < length) {
+				if (this.channel.read(this.buffer) < 0) {
+					this.buffer.flip();
+					return false;
+				}
+			}
+			this.buffer.flip();
+			return true;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (this.next == null && !this.ended) {
+				try {
+					this.next = this.read();
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+				this.ended = this.next == null;
+			}
+			return this.next != null;
+		}
+
+		@Override
+		public Document next() {
+			if (!this.hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Document document = this.next;
+			this.next = null;
+			return document;
+		}
+
+		private Document read() throws IOException {
+			if (!this.fill(4)) {
+				return null;
+			}
+			int length = this.buffer.getInt();
+			if (length < 0 || !this.fill(length)) {
+				return null;
+			}
+			int added = this.getVarInt();
+			if (this.dictionarySize + added > this.dictionary.length) {
+				this.dictionary = Arrays.copyOf(this.dictionary, Math.max(this.dictionary.length * 2, this.dictionarySize + added));
+			}
+			for (int i = 0; i < added; i++) {
+				this.dictionary[this.dictionarySize++] = this.getString();
+			}
+			String id = this.getString();
+			int size = this.getVarInt();
+			int[] begins = new int[size];
+			int[] ends = new int[size];
+			int[] tagIds = new int[size];
+			int[] lemmaIds = new int[size];
+			int previous = 0;
+			for (int i = 0; i < size; i++) {
+				begins[i] = previous + this.getVarInt();
+				previous = begins[i];
+			}
+			for (int i = 0; i < size; i++) {
+				ends[i] = begins[i] + this.getVarInt();
+			}
+			for (int i = 0; i < size; i++) {
+				tagIds[i] = this.getVarInt();
+			}
+			for (int i = 0; i < size; i++) {
+				lemmaIds[i] = this.getVarInt();
+			}
+			return new Document(id, begins, ends, tagIds, lemmaIds, this.dictionary);
+		}
+
+		private String getString() {
+			byte[] bytes = new byte[this.getVarInt()];
+			this.buffer.get(bytes);
+			return new String(bytes, UTF_8);
+		}
+
+		private int getVarInt() {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = this.buffer.get();
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return value;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.data.close();
+		}
+
+	}
+
+}
@@ -0,0 +1,90 @@
+package fr.univnantes.lina.uima.engines;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of the lemma TreeTagger gives to a lowercased surface
+ * form, as sent to TreeTagger, with one of the cacheable (typically
+ * closed-class) tags.
+ *
+ * Cached forms are still sent to TreeTagger, so that they stay in the
+ * context of their neighbours and get the tag TreeTagger gives them in
+ * this context. When it is the tag a form was cached with, the lemma is
+ * taken from the cache instead of being picked again from the lemmata
+ * TreeTagger answered. TreeTagger gives a form the same lemma for the
+ * same tag, so the tagging output does not change.
+ *
+ * A form is cached the first time TreeTagger gives it a cacheable tag and
+ * a known lemma, until the cache holds size forms. Nothing is evicted:
+ * the forms of the closed classes are few.
+ */
+public class TokenCache {
+
+	private final int size;
+	private final Set<String> tags;
+	private final ConcurrentMap<String, Entry> entries;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public TokenCache(int size, Collection<String> tags) {
+		this.size = size;
+		this.tags = new HashSet<String>(tags);
+		this.entries = new ConcurrentHashMap<String, Entry>();
+	}
+
+	/*
+	 * null when the form is not cached, counted by count()
+	 */
+	public Entry get(String text) {
+		return this.entries.get(text);
+	}
+
+	public void put(String text, String tag, String lemma) {
+		if (this.tags.contains(tag) && this.entries.size() < this.size) {
+			this.entries.putIfAbsent(text, new Entry(tag, lemma));
+		}
+	}
+
+	/*
+	 * Adds the hits and misses of the tokens of a batch
+	 */
+	public void count(int hits, int misses) {
+		this.hits.addAndGet(hits);
+		this.misses.addAndGet(misses);
+	}
+
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	public long getMisses() {
+		return this.misses.get();
+	}
+
+	public static class Entry {
+
+		private final String tag;
+		private final String lemma;
+
+		Entry(String tag, String lemma) {
+			this.tag = tag;
+			this.lemma = lemma;
+		}
+
+		public String getTag() {
+			return this.tag;
+		}
+
+		public String getLemma() {
+			return this.lemma;
+		}
+
+	}
+
+}
@@ -0,0 +1,79 @@
+package fr.univnantes.lina.uima.engines;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.uima.cas.FSIterator;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationIndex;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+
+/**
+ * The runs of tokens to tag in a CAS: the tokens covered by a region of
+ * the include types, or all of them, and not covered by a region of the
+ * exclude types. Overlapping regions are merged, tokens crossing the end
+ * of an include region are left out.
+ */
+class TokenScope {
+
+	private final Type tokenType;
+	private final Type[] includeTypes;
+	private final Type[] excludeTypes;
+
+	public TokenScope(Type tokenType, Type[] includeTypes, Type[] excludeTypes) {
+		this.tokenType = tokenType;
+		this.includeTypes = includeTypes;
+		this.excludeTypes = excludeTypes;
+	}
+
+	public boolean isScoped() {
+		return this.includeTypes.length > 0 || this.excludeTypes.length > 0;
+	}
+
+	public List<Segment> getSegments(JCas cas) {
+		if (!this.isScoped()) {
+			return Collections.singletonList(new Segment(cas, null, Integer.MAX_VALUE));
+		}
+		List<Segment> segments = new ArrayList<Segment>();
+		Regions excluded = new Regions(cas, this.excludeTypes);
+		AnnotationIndex<Annotation> tokens = cas.getAnnotationIndex(this.tokenType);
+		if (this.includeTypes.length == 0) {
+			this.addRuns(segments, cas, tokens.iterator(), Integer.MAX_VALUE, excluded);
+		} else {
+			Regions included = new Regions(cas, this.includeTypes);
+			for (int i = 0; i < included.size(); i++) {
+				// the tokens beginning in the region, those crossing its end are left out by addRuns
+				this.addRuns(segments, cas, tokens.subiterator(included.get(i), true, false), included.getEnd(i), excluded);
+			}
+		}
+		return segments;
+	}
+
+	private void addRuns(List<Segment> segments, JCas cas, FSIterator<Annotation> tokens, int end, Regions excluded) {
+		Annotation first = null;
+		int count = 0;
+		while (tokens.hasNext()) {
+			Annotation token = tokens.get();
+			if (token.getBegin() >= end) {
+				break;
+			}
+			tokens.moveToNext();
+			if (token.getEnd() <= end && !excluded.covers(token)) {
+				if (first == null) {
+					first = token;
+				}
+				count++;
+			} else if (first != null) {
+				segments.add(new Segment(cas, first, count));
+				first = null;
+				count = 0;
+			}
+		}
+		if (first != null) {
+			segments.add(new Segment(cas, first, count));
+		}
+	}
+
+}
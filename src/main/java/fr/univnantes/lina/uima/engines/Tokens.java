@@ -0,0 +1,337 @@
+package fr.univnantes.lina.uima.engines;
+
+import java.io.IOException;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+import org.annolab.tt4j.TokenAdapter;
+import org.apache.uima.cas.FSIterator;
+import org.apache.uima.cas.Type;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCreationUtils;
+
+/**
+ * A view of the tokens of a batch, walked lazily from the annotation
+ * indexes each time tt4j iterates over it.
+ * 
+ * Tokens tt4j would consider problematic and tokens tagged by the
+ * pre-tagger are decided once, on a first walk, and skipped by the
+ * following ones. tt4j can then run in performance mode without
+ * copying the tokens. When the handler adds annotations to the indexes,
+ * the tokens are copied on the first walk instead.
+ */
+class Tokens extends AbstractCollection<Annotation> {
+
+	/*
+	 * Separates the documents of a batch so that TreeTagger does not
+	 * carry its context from one document over to the next
+	 */
+	static final String BOUNDARY_TEXT = ".";
+
+	/*
+	 * The token standing for BOUNDARY_TEXT, compared by identity. It
+	 * lives in a CAS of its own, so that batches add nothing to the CASes
+	 * they tag.
+	 */
+	static final Annotation BOUNDARY = createBoundary();
+
+	static final int MAXIMUM_TOKEN_LENGTH = 90000;
+
+	private static Annotation createBoundary() {
+		try {
+			return new Annotation(CasCreationUtils.createCas((TypeSystemDescription) null, null, null).getJCas());
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private final List<Segment> segments;
+	private final Type tokenType;
+	private final TokenAdapter<Annotation> adapter;
+	private final PreTagger preTagger;
+	private final String encoding;
+	private final boolean utf8;
+	private final BitSet skipped;
+	private final BitSet cached;
+	private final BitSet boundaries;
+	private int positions;
+	private final List<Annotation> cachedTokens;
+	private final List<TokenCache.Entry> cachedEntries;
+	private List<Annotation> snapshot;
+	private int size;
+
+	/*
+	 * With a token cache, the cache entry of each token sent, or its 
+	 * text when it is missing from the cache
+	 */
+	private final TokenCache tokenCache;
+	private List<TokenCache.Entry> cacheEntries;
+	private List<String> cacheMisses;
+
+	/*
+	 * copy is needed when the tokens are iterated from another thread 
+	 * than the one writing to the CAS, or while annotations are added 
+	 * to the indexes. preTagger and tokenCache may be null.
+	 */
+	public Tokens(List<Segment> segments, Type tokenType, String encoding, boolean copy, TokenAdapter<Annotation> adapter, PreTagger preTagger, TokenCache tokenCache) throws IOException {
+		this.segments = segments;
+		this.tokenType = tokenType;
+		this.adapter = adapter;
+		this.preTagger = preTagger;
+		this.encoding = encoding;
+		this.utf8 = "UTF-8".equals(this.encoding.toUpperCase(Locale.US));
+		this.skipped = new BitSet();
+		this.cached = new BitSet();
+		this.boundaries = new BitSet();
+		this.cachedTokens = new ArrayList<Annotation>();
+		this.cachedEntries = new ArrayList<TokenCache.Entry>();
+		if (copy) {
+			this.snapshot = new ArrayList<Annotation>();
+		}
+		this.tokenCache = tokenCache;
+		if (this.tokenCache != null) {
+			this.cacheEntries = new ArrayList<TokenCache.Entry>();
+			this.cacheMisses = new ArrayList<String>();
+		}
+		this.scan();
+	}
+
+	private void scan() throws IOException {
+		Walker walker = new Walker();
+		int position = 0;
+		int hits = 0;
+		while (walker.hasNext()) {
+			Annotation token = walker.next();
+			String text = null;
+			if (token != BOUNDARY) {
+				text = this.adapter.getText(token);
+				if (this.isProblematic(text)) {
+					this.skipped.set(position);
+				} else if (this.preTagger != null) {
+					TokenCache.Entry entry = this.preTagger.tag(text);
+					if (entry != null) {
+						this.cachedTokens.add(token);
+						this.cachedEntries.add(entry);
+						this.cached.set(position);
+						this.skipped.set(position);
+					}
+				}
+			} else {
+				this.boundaries.set(position);
+			}
+			if (!this.skipped.get(position)) {
+				this.size++;
+				if (this.snapshot != null) {
+					this.snapshot.add(token);
+				}
+				if (this.tokenCache != null) {
+					TokenCache.Entry entry = text == null ? null : this.tokenCache.get(text);
+					this.cacheEntries.add(entry);
+					this.cacheMisses.add(entry == null ? text : null);
+					if (entry != null) {
+						hits++;
+					}
+				}
+			}
+			position++;
+		}
+		this.positions = position;
+		if (this.tokenCache != null) {
+			this.tokenCache.count(hits, this.size - this.boundaries.cardinality() - hits);
+		}
+	}
+
+	public boolean hasCache() {
+		return this.tokenCache != null;
+	}
+
+	/*
+	 * The cache entry of the token sent at position, if any
+	 */
+	public TokenCache.Entry getCacheEntry(int position) {
+		return this.cacheEntries.get(position);
+	}
+
+	/*
+	 * Caches the result of a token sent at position and missing from
+	 * the cache
+	 */
+	public void cache(int position, String tag, String lemma) {
+		String text = this.cacheMisses.get(position);
+		if (text != null) {
+			this.tokenCache.put(text, tag, lemma);
+		}
+	}
+
+	/*
+	 * Tagged and cached tokens, boundaries excluded
+	 */
+	public int count() {
+		return this.size - this.boundaries.cardinality() + this.cachedTokens.size();
+	}
+
+	/*
+	 * Tokens walked, skipped ones and boundaries included
+	 */
+	public int getPositions() {
+		return this.positions;
+	}
+
+	/*
+	 * Tagged by the pre-tagger, in the order they were walked
+	 */
+	public List<Annotation> getCachedTokens() {
+		return this.cachedTokens;
+	}
+
+	public List<TokenCache.Entry> getCachedEntries() {
+		return this.cachedEntries;
+	}
+
+	public boolean isCached(int position) {
+		return this.cached.get(position);
+	}
+
+	/*
+	 * Not sent to TreeTagger, pre-tagged tokens included
+	 */
+	public boolean isSkipped(int position) {
+		return this.skipped.get(position);
+	}
+
+	public boolean isBoundary(int position) {
+		return this.boundaries.get(position);
+	}
+
+	/*
+	 * Same rules as tt4j's TreeTaggerWrapper.removeProblematicTokens
+	 */
+	private boolean isProblematic(String text) throws IOException {
+		if (text == null) {
+			return true;
+		}
+		if (text.length() > (MAXIMUM_TOKEN_LENGTH >> 2) && text.getBytes(this.encoding).length >= MAXIMUM_TOKEN_LENGTH) {
+			return true;
+		}
+		boolean blank = true;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (!this.utf8 && Character.isSurrogate(c)) {
+				return true;
+			}
+			if (c <= 27) {
+				return true;
+			}
+			blank &= Character.isWhitespace(c);
+		}
+		return blank;
+	}
+
+	public void writeCached(AnnotationHandler handler) {
+		for (int i = 0; i < this.cachedTokens.size(); i++) {
+			TokenCache.Entry entry = this.cachedEntries.get(i);
+			handler.setCertain(entry.getTag());
+			handler.write(this.cachedTokens.get(i), entry.getTag(), entry.getLemma());
+		}
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public Iterator<Annotation> iterator() {
+		if (this.snapshot != null) {
+			return this.snapshot.iterator();
+		}
+		final Walker walker = new Walker();
+		return new Iterator<Annotation>() {
+
+			private int position = 0;
+			private Annotation next;
+
+			@Override
+			public boolean hasNext() {
+				while (this.next == null && walker.hasNext()) {
+					Annotation token = walker.next();
+					if (!skipped.get(this.position++)) {
+						this.next = token;
+					}
+				}
+				return this.next != null;
+			}
+
+			@Override
+			public Annotation next() {
+				if (!this.hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Annotation token = this.next;
+				this.next = null;
+				return token;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/*
+	 * Walks the token index of each segment, with a boundary between 
+	 * two segments
+	 */
+	private class Walker implements Iterator<Annotation> {
+
+		private int index = 0;
+		private FSIterator<Annotation> iterator;
+		private int remaining;
+		private boolean started;
+		private boolean crossing;
+
+		@Override
+		public boolean hasNext() {
+			while (this.iterator == null || this.remaining == 0 || !this.iterator.hasNext()) {
+				if (this.index == segments.size()) {
+					return false;
+				}
+				Segment segment = segments.get(this.index++);
+				this.iterator = segment.getCas().getAnnotationIndex(Tokens.this.tokenType).iterator();
+				if (segment.getFirst() != null) {
+					this.iterator.moveTo(segment.getFirst());
+				}
+				this.remaining = segment.getCount();
+				this.crossing = this.started;
+			}
+			return true;
+		}
+
+		@Override
+		public Annotation next() {
+			if (!this.hasNext()) {
+				throw new NoSuchElementException();
+			}
+			this.started = true;
+			if (this.crossing) {
+				this.crossing = false;
+				return BOUNDARY;
+			}
+			this.remaining--;
+			return this.iterator.next();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+}
@@ -0,0 +1,67 @@
+package fr.univnantes.lina.uima.engines;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.JCas;
+
+/**
+ * Buffers incoming CASes and tags them with one TreeTagger round-trip
+ * as soon as BatchSize CASes are pending. When PipelineWindow is set,
+ * PipelineWindow more batches are gathered, so that they are tagged
+ * ahead of the first.
+ *
+ * The batcher drives the annotator itself, outside of a UIMA pipeline,
+ * which passes CASes to the annotator one at a time. Batches are tagged
+ * in the thread adding or flushing CASes: a CAS belongs to the batcher
+ * until the listener is told it was processed or failed, and the last
+ * CASes are tagged on flush() or close().
+ */
+public class TreeTaggerBatcher {
+
+	public interface Listener {
+
+		void processed(List<JCas> cases);
+
+		void failed(List<JCas> cases, AnalysisEngineProcessException e);
+
+	}
+
+	private final TreeTaggerWrapper tagger;
+	private final Listener listener;
+
+	private List<JCas> pending;
+
+	public TreeTaggerBatcher(TreeTaggerWrapper tagger, Listener listener) {
+		this.tagger = tagger;
+		this.listener = listener;
+		this.pending = new ArrayList<JCas>(tagger.getFlushSize());
+	}
+
+	public synchronized void add(JCas cas) {
+		this.pending.add(cas);
+		if (this.pending.size() >= this.tagger.getFlushSize()) {
+			this.flush();
+		}
+	}
+
+	public synchronized void flush() {
+		if (this.pending.isEmpty()) {
+			return;
+		}
+		List<JCas> batch = this.pending;
+		this.pending = new ArrayList<JCas>(this.tagger.getFlushSize());
+		try {
+			this.tagger.process(batch);
+			this.listener.processed(batch);
+		} catch (AnalysisEngineProcessException e) {
+			this.listener.failed(batch, e);
+		}
+	}
+
+	public void close() {
+		this.flush();
+	}
+
+}
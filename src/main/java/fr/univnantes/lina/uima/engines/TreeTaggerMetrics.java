@@ -0,0 +1,48 @@
+package fr.univnantes.lina.uima.engines;
+
+/**
+ * Receives what TreeTaggerWrapper does, for monitoring. Implementations
+ * are called from the processing threads and must be cheap and
+ * thread-safe.
+ */
+public interface TreeTaggerMetrics {
+
+	/*
+	 * A call to process, end to end, with the documents it tagged: neither
+	 * skipped nor failed
+	 */
+	void processed(int documents, long tokens, long nanos);
+
+	/*
+	 * Documents left untagged, entirely or in part, after a
+	 * TreeTaggerException
+	 */
+	void skipped(int documents);
+
+	/*
+	 * Documents of the batch a call to process failed on
+	 */
+	void failed(int documents);
+
+	/*
+	 * A round-trip to the TreeTagger process, CAS writes excluded
+	 */
+	void tagged(long nanos);
+
+	/*
+	 * Time spent writing the results of a round-trip to the CAS
+	 */
+	void written(long nanos);
+
+	/*
+	 * TreeTagger processes started for the first time, and restarted
+	 */
+	void started(int processes, int restarts);
+
+	/*
+	 * Changes of the model documents are tagged with, and models whose
+	 * warm processes were stopped to make room for another one
+	 */
+	void switched(int switches, int evictions);
+
+}
@@ -0,0 +1,262 @@
+package fr.univnantes.lina.uima.engines;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.resource.DataResource;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.SharedResourceObject;
+import org.apache.uima.util.Level;
+
+/**
+ * Default {@link TreeTaggerMetrics}, published as a JMX MBean.
+ *
+ * When no metrics are bound to an annotator, the JVM-wide instance
+ * returned by {@link #getInstance()} is used.
+ *
+ * The MBean is registered while annotators use the statistics: each
+ * annotator acquires them when initialized and releases them when
+ * destroyed, the last one unregistering the MBean.
+ */
+public class TreeTaggerStatistics implements TreeTaggerMetrics, TreeTaggerStatisticsMBean, SharedResourceObject {
+
+	public static final String KEY_TT_METRICS = "TreeTaggerMetrics";
+
+	public static final String OBJECT_NAME = "fr.univnantes.lina.uima:type=TreeTaggerWrapper";
+
+	private static TreeTaggerStatistics instance;
+
+	public static synchronized TreeTaggerStatistics getInstance() {
+		if (instance == null) {
+			instance = new TreeTaggerStatistics();
+		}
+		return instance;
+	}
+
+	private String name = OBJECT_NAME;
+	/*
+	 * Guarded by the statistics
+	 */
+	private int users;
+	private ObjectName registered;
+
+	private final AtomicLong documents = new AtomicLong();
+	private final AtomicLong tokens = new AtomicLong();
+	private final AtomicLong processNanos = new AtomicLong();
+	private final AtomicLong taggerNanos = new AtomicLong();
+	private final AtomicLong writeNanos = new AtomicLong();
+	private final AtomicLong skippedDocuments = new AtomicLong();
+	private final AtomicLong failedDocuments = new AtomicLong();
+	private final AtomicLong processStarts = new AtomicLong();
+	private final AtomicLong processRestarts = new AtomicLong();
+	private final AtomicLong modelSwitches = new AtomicLong();
+	private final AtomicLong modelEvictions = new AtomicLong();
+	private final LatencyHistogram processLatency = new LatencyHistogram();
+	private final LatencyHistogram taggerLatency = new LatencyHistogram();
+	private final LatencyHistogram writeLatency = new LatencyHistogram();
+
+	@Override
+	public void load(DataResource data) throws ResourceInitializationException {
+		this.name = OBJECT_NAME + ",name=" + Integer.toHexString(System.identityHashCode(this));
+	}
+
+	public synchronized void acquire() {
+		if (this.users++ == 0) {
+			try {
+				this.registered = new ObjectName(this.name);
+				ManagementFactory.getPlatformMBeanServer().registerMBean(this, this.registered);
+			} catch (JMException e) {
+				// metrics are still collected, only not published
+				this.registered = null;
+				UIMAFramework.getLogger().log(Level.WARNING, "Cannot register " + this.name + ": " + e.getMessage());
+			}
+		}
+	}
+
+	public synchronized void release() {
+		if (--this.users == 0 && this.registered != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.registered);
+			} catch (JMException e) {
+				UIMAFramework.getLogger().log(Level.WARNING, "Cannot unregister " + this.name + ": " + e.getMessage());
+			}
+			this.registered = null;
+		}
+	}
+
+	/*
+	 * Whether the MBean is registered, for tests
+	 */
+	public synchronized boolean isRegistered() {
+		return this.registered != null;
+	}
+
+	@Override
+	public void processed(int documents, long tokens, long nanos) {
+		this.documents.addAndGet(documents);
+		this.tokens.addAndGet(tokens);
+		this.processNanos.addAndGet(nanos);
+		this.processLatency.record(nanos);
+	}
+
+	@Override
+	public void skipped(int documents) {
+		this.skippedDocuments.addAndGet(documents);
+	}
+
+	@Override
+	public void failed(int documents) {
+		this.failedDocuments.addAndGet(documents);
+	}
+
+	@Override
+	public void tagged(long nanos) {
+		this.taggerNanos.addAndGet(nanos);
+		this.taggerLatency.record(nanos);
+	}
+
+	@Override
+	public void written(long nanos) {
+		this.writeNanos.addAndGet(nanos);
+		this.writeLatency.record(nanos);
+	}
+
+	@Override
+	public void started(int processes, int restarts) {
+		this.processStarts.addAndGet(processes);
+		this.processRestarts.addAndGet(restarts);
+	}
+
+	@Override
+	public void switched(int switches, int evictions) {
+		this.modelSwitches.addAndGet(switches);
+		this.modelEvictions.addAndGet(evictions);
+	}
+
+	@Override
+	public long getDocuments() {
+		return this.documents.get();
+	}
+
+	@Override
+	public long getTokens() {
+		return this.tokens.get();
+	}
+
+	@Override
+	public long getSkippedDocuments() {
+		return this.skippedDocuments.get();
+	}
+
+	@Override
+	public long getFailedDocuments() {
+		return this.failedDocuments.get();
+	}
+
+	@Override
+	public long getProcessStarts() {
+		return this.processStarts.get();
+	}
+
+	@Override
+	public long getProcessRestarts() {
+		return this.processRestarts.get();
+	}
+
+	@Override
+	public long getModelSwitches() {
+		return this.modelSwitches.get();
+	}
+
+	@Override
+	public long getModelEvictions() {
+		return this.modelEvictions.get();
+	}
+
+	/*
+	 * Over the time spent in process, not the wall-clock time
+	 */
+	@Override
+	public double getTokensPerSecond() {
+		long nanos = this.processNanos.get();
+		return nanos == 0 ? 0 : this.tokens.get() * 1e9 / nanos;
+	}
+
+	@Override
+	public double getTaggerTime() {
+		return this.taggerNanos.get() / 1e6;
+	}
+
+	@Override
+	public double getWriteTime() {
+		return this.writeNanos.get() / 1e6;
+	}
+
+	@Override
+	public double getProcessLatencyMedian() {
+		return this.processLatency.getPercentile(50);
+	}
+
+	@Override
+	public double getProcessLatency99thPercentile() {
+		return this.processLatency.getPercentile(99);
+	}
+
+	@Override
+	public double getTaggerLatencyMedian() {
+		return this.taggerLatency.getPercentile(50);
+	}
+
+	@Override
+	public double getTaggerLatency99thPercentile() {
+		return this.taggerLatency.getPercentile(99);
+	}
+
+	@Override
+	public double getWriteLatencyMedian() {
+		return this.writeLatency.getPercentile(50);
+	}
+
+	@Override
+	public double getWriteLatency99thPercentile() {
+		return this.writeLatency.getPercentile(99);
+	}
+
+	@Override
+	public long[] getProcessLatencyHistogram() {
+		return this.processLatency.getCounts();
+	}
+
+	@Override
+	public long[] getTaggerLatencyHistogram() {
+		return this.taggerLatency.getCounts();
+	}
+
+	@Override
+	public long[] getWriteLatencyHistogram() {
+		return this.writeLatency.getCounts();
+	}
+
+	@Override
+	public void reset() {
+		this.documents.set(0);
+		this.tokens.set(0);
+		this.processNanos.set(0);
+		this.taggerNanos.set(0);
+		this.writeNanos.set(0);
+		this.skippedDocuments.set(0);
+		this.failedDocuments.set(0);
+		this.processStarts.set(0);
+		this.processRestarts.set(0);
+		this.modelSwitches.set(0);
+		this.modelEvictions.set(0);
+		this.processLatency.reset();
+		this.taggerLatency.reset();
+		this.writeLatency.reset();
+	}
+
+}
@@ -0,0 +1,56 @@
+package fr.univnantes.lina.uima.engines;
+
+/**
+ * JMX view of {@link TreeTaggerStatistics}. Latencies are in ms.
+ */
+public interface TreeTaggerStatisticsMBean {
+
+	long getDocuments();
+
+	long getTokens();
+
+	long getSkippedDocuments();
+
+	long getFailedDocuments();
+
+	long getProcessStarts();
+
+	long getProcessRestarts();
+
+	long getModelSwitches();
+
+	long getModelEvictions();
+
+	double getTokensPerSecond();
+
+	/*
+	 * Total time spent in TreeTagger round-trips
+	 */
+	double getTaggerTime();
+
+	/*
+	 * Total time spent writing results to the CAS
+	 */
+	double getWriteTime();
+
+	double getProcessLatencyMedian();
+
+	double getProcessLatency99thPercentile();
+
+	double getTaggerLatencyMedian();
+
+	double getTaggerLatency99thPercentile();
+
+	double getWriteLatencyMedian();
+
+	double getWriteLatency99thPercentile();
+
+	long[] getProcessLatencyHistogram();
+
+	long[] getTaggerLatencyHistogram();
+
+	long[] getWriteLatencyHistogram();
+
+	void reset();
+
+}
@@ -1,20 +1,37 @@
 package fr.univnantes.lina.uima.engines;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.StringTokenizer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
 
+import org.annolab.tt4j.DefaultExecutableResolver;
+import org.annolab.tt4j.DefaultModelResolver;
+import org.annolab.tt4j.PlatformDetector;
 import org.annolab.tt4j.TokenAdapter;
 import org.annolab.tt4j.TokenHandler;
+import org.annolab.tt4j.TreeTaggerModelUtil;
 import org.annolab.tt4j.TreeTaggerException;
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.FSIterator;
 import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.FeatureStructure;
 import org.apache.uima.cas.Type;
-import org.apache.uima.cas.text.AnnotationFS;
-import org.apache.uima.cas.text.AnnotationIndex;
+import org.apache.uima.cas.TypeSystem;
 import org.apache.uima.fit.component.JCasAnnotator_ImplBase;
 import org.apache.uima.fit.descriptor.ConfigurationParameter;
 import org.apache.uima.fit.descriptor.ExternalResource;
@@ -24,7 +41,10 @@ import org.apache.uima.resource.ResourceAccessException;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.util.Level;
 
+import fr.univnantes.lina.uima.models.TreeTaggerOptions;
 import fr.univnantes.lina.uima.models.TreeTaggerParameter;
+import fr.univnantes.lina.uima.models.TreeTaggerProcessPool;
+import fr.univnantes.lina.uima.models.TreeTaggerTagset;
 
 public class TreeTaggerWrapper extends JCasAnnotator_ImplBase {
 
@@ -37,30 +57,381 @@ public class TreeTaggerWrapper extends JCasAnnotator_ImplBase {
 	@ConfigurationParameter(name = PARAM_TT_PARAMETER_FILE, mandatory=false)
 	private String ttParameterFile;
 	
+	/*
+	 * Reloads the parameter file when it changes, documents are tagged 
+	 * with the new model as soon as the file is read again
+	 */
+	public static final String PARAM_WATCH_PARAMETER_FILE = "WatchParameterFile";
+	@ConfigurationParameter(name = PARAM_WATCH_PARAMETER_FILE, mandatory=false, defaultValue="false")
+	private boolean watchParameterFile;
+	
 	public static final String PARAM_ANNOTATION_TYPE = "AnnotationType";
 	@ConfigurationParameter(name = PARAM_ANNOTATION_TYPE, mandatory=true)
 	private String annotationType;
 	
+	/*
+	 * Options of the TreeTagger processes, see TreeTaggerOptions for the 
+	 * ones accepted
+	 */
 	public static final String PARAM_TT_ARGUMENTS = "TreeTaggerArguments";
-	@ConfigurationParameter(name = PARAM_TT_ARGUMENTS, mandatory=false, defaultValue="-quiet -no-unknown -sgml -token -lemma")
+	@ConfigurationParameter(name = PARAM_TT_ARGUMENTS, mandatory=false, defaultValue=TreeTaggerOptions.DEFAULT)
 	private String ttArgumentsAsString;
-	private String[] ttArguments;
+	private TreeTaggerOptions ttOptions;
 
 	public static final String PARAM_TAG_FEATURE = "TagFeature";
 	@ConfigurationParameter(name = PARAM_TAG_FEATURE, mandatory=true)
 	private String tagFeature;
 	
+	/*
+	 * Lemmata are neither picked nor written when unset
+	 */
 	public static final String PARAM_LEMMA_FEATURE = "LemmaFeature";
-	@ConfigurationParameter(name = PARAM_LEMMA_FEATURE, mandatory=true)
+	@ConfigurationParameter(name = PARAM_LEMMA_FEATURE, mandatory=false)
 	private String lemmaFeature;
 	
 	public static final String PARAM_UPDATE_ANNOTATION_FEATURES = "UpdateAnnotationFeatures";
 	@ConfigurationParameter(name = PARAM_UPDATE_ANNOTATION_FEATURES, mandatory=true)
 	private boolean updateAnnotationFeatures;
 	
+	/*
+	 * When annotations are created, creates them once tagging is over, in
+	 * index order. A single annotation carries both the tag and the lemma
+	 * when TagFeature and LemmaFeature belong to the same type.
+	 */
+	public static final String PARAM_BULK_ANNOTATION_CREATION = "BulkAnnotationCreation";
+	@ConfigurationParameter(name = PARAM_BULK_ANNOTATION_CREATION, mandatory=false, defaultValue="false")
+	private boolean bulkAnnotationCreation;
+	
+	/*
+	 * Maximum number of TreeTagger processes per model and arguments,
+	 * 0 means one per available processor. Annotators sharing a pool get
+	 * the largest size any of them asked for.
+	 */
+	public static final String PARAM_POOL_SIZE = "ProcessPoolSize";
+	@ConfigurationParameter(name = PARAM_POOL_SIZE, mandatory=false, defaultValue="0")
+	private int poolSize;
+	
+	public static final String PARAM_POOL_BORROW_TIMEOUT = "ProcessPoolBorrowTimeout";
+	@ConfigurationParameter(name = PARAM_POOL_BORROW_TIMEOUT, mandatory=false, defaultValue="60000")
+	private long poolBorrowTimeout;
+	
+	/*
+	 * CASes tagged in one round-trip by process(Collection), as called by
+	 * a TreeTaggerBatcher. A UIMA pipeline calls process(JCas), which 
+	 * tags its CAS alone.
+	 */
+	public static final String PARAM_BATCH_SIZE = "BatchSize";
+	@ConfigurationParameter(name = PARAM_BATCH_SIZE, mandatory=false, defaultValue="64")
+	private int batchSize;
+	
+	/*
+	 * Number of distinct lemmata shared across CASes, 0 disables lemma interning
+	 */
+	public static final String PARAM_LEMMA_DICTIONARY_SIZE = "LemmaDictionarySize";
+	@ConfigurationParameter(name = PARAM_LEMMA_DICTIONARY_SIZE, mandatory=false, defaultValue="100000")
+	private int lemmaDictionarySize;
+	
+	/*
+	 * Number of surface forms kept in the token cache, 0 disables it.
+	 * 
+	 * Cached forms are still tagged by TreeTagger, in their context, and
+	 * only skip the lemma post-processing: tagging output does not change.
+	 */
+	public static final String PARAM_TOKEN_CACHE_SIZE = "TokenCacheSize";
+	@ConfigurationParameter(name = PARAM_TOKEN_CACHE_SIZE, mandatory=false, defaultValue="0")
+	private int tokenCacheSize;
+	
+	/*
+	 * Tags whose tokens have their lemma kept in the token cache, e.g. the
+	 * closed-class tags of the model
+	 */
+	public static final String PARAM_TOKEN_CACHE_TAGS = "TokenCacheTags";
+	@ConfigurationParameter(name = PARAM_TOKEN_CACHE_TAGS, mandatory=false, defaultValue={})
+	private String[] tokenCacheTags;
+	
+	/*
+	 * Rules tagging tokens without TreeTagger, as regex<TAB>tag[<TAB>lemma],
+	 * see PreTagger
+	 */
+	public static final String PARAM_PRE_TAGGING_RULES = "PreTaggingRules";
+	@ConfigurationParameter(name = PARAM_PRE_TAGGING_RULES, mandatory=false, defaultValue={})
+	private String[] preTaggingRules;
+	
+	/*
+	 * Lexicon of words tagged without TreeTagger, in the TreeTagger lexicon
+	 * format and UTF-8
+	 */
+	public static final String PARAM_PRE_TAGGING_LEXICON = "PreTaggingLexicon";
+	@ConfigurationParameter(name = PARAM_PRE_TAGGING_LEXICON, mandatory=false)
+	private String preTaggingLexicon;
+	
+	/*
+	 * Locale used to lowercase tokens, as a language tag. When empty, the 
+	 * document language is used.
+	 */
+	public static final String PARAM_LOWER_CASE_LOCALE = "LowerCaseLocale";
+	@ConfigurationParameter(name = PARAM_LOWER_CASE_LOCALE, mandatory=false, defaultValue="")
+	private String lowerCaseLocaleAsString;
+	
+	/*
+	 * Documents with more tokens are tagged in chunks of at most MaxChunkSize
+	 * tokens, 0 disables chunking
+	 */
+	public static final String PARAM_MAX_CHUNK_SIZE = "MaxChunkSize";
+	@ConfigurationParameter(name = PARAM_MAX_CHUNK_SIZE, mandatory=false, defaultValue="0")
+	private int maxChunkSize;
+	
+	/*
+	 * Annotation type whose boundaries chunks are cut at
+	 */
+	public static final String PARAM_SENTENCE_TYPE = "SentenceType";
+	@ConfigurationParameter(name = PARAM_SENTENCE_TYPE, mandatory=false)
+	private String sentenceTypeName;
+	
+	/*
+	 * Annotation types of the regions to tag, each region being tagged 
+	 * as a separate context. When empty, the whole document is tagged.
+	 */
+	public static final String PARAM_INCLUDE_TYPES = "IncludeTypes";
+	@ConfigurationParameter(name = PARAM_INCLUDE_TYPES, mandatory=false, defaultValue={})
+	private String[] includeTypeNames;
+	
+	/*
+	 * Annotation types of the regions whose tokens are not tagged, such as
+	 * tables or code blocks
+	 */
+	public static final String PARAM_EXCLUDE_TYPES = "ExcludeTypes";
+	@ConfigurationParameter(name = PARAM_EXCLUDE_TYPES, mandatory=false, defaultValue={})
+	private String[] excludeTypeNames;
+	
+	/*
+	 * Type:feature giving the language of a document, picking its model
+	 * when the parameter file has models for several languages. The 
+	 * document language is used when unset or when the CAS has no 
+	 * feature structure of the type.
+	 */
+	public static final String PARAM_LANGUAGE_FEATURE = "LanguageFeature";
+	@ConfigurationParameter(name = PARAM_LANGUAGE_FEATURE, mandatory=false)
+	private String languageFeatureName;
+	
+	/*
+	 * Number of models whose processes are kept warm, the processes of 
+	 * the least recently used model are stopped beyond, 0 keeps them all
+	 */
+	public static final String PARAM_WARM_MODELS = "WarmModels";
+	@ConfigurationParameter(name = PARAM_WARM_MODELS, mandatory=false, defaultValue="3")
+	private int warmModelsSize;
+	
+	/*
+	 * Number of TreeTagger processes the chunks of a single document are
+	 * tagged on concurrently, 1 tags them one after the other
+	 */
+	public static final String PARAM_PARALLELISM = "Parallelism";
+	@ConfigurationParameter(name = PARAM_PARALLELISM, mandatory=false, defaultValue="1")
+	private int parallelism;
+	
+	/*
+	 * Number of batches tagged ahead while the calling thread writes the
+	 * results of an earlier batch to its CASes, 0 tags one batch at a time.
+	 * Only the batches of a single call overlap, see TreeTaggerBatcher.
+	 */
+	public static final String PARAM_PIPELINE_WINDOW = "PipelineWindow";
+	@ConfigurationParameter(name = PARAM_PIPELINE_WINDOW, mandatory=false, defaultValue="0")
+	private int pipelineWindow;
+	
+	/*
+	 * Directory of the persistent cache of tagged documents, none disables 
+	 * it. Documents tagged in chunks are not cached.
+	 */
+	public static final String PARAM_DOCUMENT_CACHE_DIRECTORY = "DocumentCacheDirectory";
+	@ConfigurationParameter(name = PARAM_DOCUMENT_CACHE_DIRECTORY, mandatory=false)
+	private String documentCacheDirectory;
+	
+	/*
+	 * Size in MB over which the document cache is compacted
+	 */
+	public static final String PARAM_DOCUMENT_CACHE_MAX_SIZE = "DocumentCacheMaxSize";
+	@ConfigurationParameter(name = PARAM_DOCUMENT_CACHE_MAX_SIZE, mandatory=false, defaultValue="1024")
+	private long documentCacheMaxSize;
+	
+	/*
+	 * Binary file the tokens, tags and lemmata of each document are written
+	 * to, see TaggingOutput
+	 */
+	public static final String PARAM_OUTPUT_FILE = "OutputFile";
+	@ConfigurationParameter(name = PARAM_OUTPUT_FILE, mandatory=false)
+	private String outputFile;
+	
+	/*
+	 * Type:feature of the id documents are written to OutputFile with, 
+	 * read from the first feature structure of the type
+	 */
+	public static final String PARAM_OUTPUT_ID_FEATURE = "OutputIdFeature";
+	@ConfigurationParameter(name = PARAM_OUTPUT_ID_FEATURE, mandatory=false)
+	private String outputIdFeatureName;
+	
+	/*
+	 * false leaves the CAS untouched, results only going to OutputFile
+	 */
+	public static final String PARAM_CAS_OUTPUT = "CasOutput";
+	@ConfigurationParameter(name = PARAM_CAS_OUTPUT, mandatory=false, defaultValue="true")
+	private boolean casOutput;
+	
+	/*
+	 * lazy: nothing is resolved before the first document, default: the 
+	 * model is resolved, eager: the installation, model and encoding are 
+	 * checked and a process is started and warmed up in the background
+	 */
+	public static final String PARAM_STARTUP_MODE = "StartupMode";
+	@ConfigurationParameter(name = PARAM_STARTUP_MODE, mandatory=false, defaultValue="default")
+	private String startupModeAsString;
+	private StartupMode startupMode;
+	
+	private enum StartupMode { LAZY, DEFAULT, EAGER }
+	
+	/*
+	 * string: tags are written to TagFeature, id: their TreeTaggerTagset 
+	 * ID is written to the int feature TagIdFeature of the same type 
+	 * instead, both: both are written. IDs are those of the 
+	 * TreeTaggerTagset resource, of Tagset, or else of the tagset of each 
+	 * TreeTagger model. Tags missing from the tagset are rejected.
+	 */
+	public static final String PARAM_TAG_OUTPUT = "TagOutput";
+	@ConfigurationParameter(name = PARAM_TAG_OUTPUT, mandatory=false, defaultValue="string")
+	private String tagOutput;
+	
+	public static final String PARAM_TAG_ID_FEATURE = "TagIdFeature";
+	@ConfigurationParameter(name = PARAM_TAG_ID_FEATURE, mandatory=false, defaultValue="tagId")
+	private String tagIdFeatureName;
+	
+	/*
+	 * Tags of the models, in the order of their IDs, instead of a 
+	 * TreeTaggerTagset resource
+	 */
+	public static final String PARAM_TAGSET = "Tagset";
+	@ConfigurationParameter(name = PARAM_TAGSET, mandatory=false, defaultValue={})
+	private String[] tagsetTags;
+	
+	/*
+	 * Type:feature of an IntegerArray receiving the tag IDs of all the 
+	 * tokens of a document in index order, NO_TAG for untagged tokens. 
+	 * The first feature structure of the type is updated, or one is 
+	 * created.
+	 */
+	public static final String PARAM_DOCUMENT_TAG_IDS_FEATURE = "DocumentTagIdsFeature";
+	@ConfigurationParameter(name = PARAM_DOCUMENT_TAG_IDS_FEATURE, mandatory=false)
+	private String documentTagIdsFeatureName;
+	
+	/*
+	 * Tags whose probability is at least ProbabilityThreshold times that
+	 * of the best tag are kept as alternatives, see TreeTagger's -prob and
+	 * -threshold options. 0 disables probabilities, which the lexicon 
+	 * Backend does not give.
+	 */
+	public static final String PARAM_PROBABILITY_THRESHOLD = "ProbabilityThreshold";
+	@ConfigurationParameter(name = PARAM_PROBABILITY_THRESHOLD, mandatory=false, defaultValue="0")
+	private float probabilityThreshold;
+	private Double ttProbabilityThreshold;
+	
+	public static final String PARAM_MAX_ALTERNATIVES = "MaxAlternatives";
+	@ConfigurationParameter(name = PARAM_MAX_ALTERNATIVES, mandatory=false, defaultValue="3")
+	private int maxAlternatives;
+	
+	/*
+	 * StringArray and FloatArray features of the type of TagFeature
+	 * receiving the alternative tags of a token, best first, and their
+	 * probabilities. Tokens tagged without TreeTagger get their tag with
+	 * probability 1.
+	 */
+	public static final String PARAM_ALTERNATIVE_TAGS_FEATURE = "AlternativeTagsFeature";
+	@ConfigurationParameter(name = PARAM_ALTERNATIVE_TAGS_FEATURE, mandatory=false)
+	private String alternativeTagsFeatureName;
+	
+	public static final String PARAM_ALTERNATIVE_PROBABILITIES_FEATURE = "AlternativeProbabilitiesFeature";
+	@ConfigurationParameter(name = PARAM_ALTERNATIVE_PROBABILITIES_FEATURE, mandatory=false)
+	private String alternativeProbabilitiesFeatureName;
+	
+	/*
+	 * Type:feature of a FloatArray receiving MaxAlternatives probabilities
+	 * per token of a document in index order, 0 when a token has fewer
+	 * alternatives, NaN for untagged tokens. Updated or created as
+	 * DocumentTagIdsFeature is.
+	 */
+	public static final String PARAM_DOCUMENT_PROBABILITIES_FEATURE = "DocumentProbabilitiesFeature";
+	@ConfigurationParameter(name = PARAM_DOCUMENT_PROBABILITIES_FEATURE, mandatory=false)
+	private String documentProbabilitiesFeatureName;
+	
+	/*
+	 * process: tags with TreeTagger processes, lookup: looks tokens up in 
+	 * the JVM with a LexiconLookupTagger, in the lexicons the parameter 
+	 * file gives as lexicon and <language>.lexicon. Lookup is no 
+	 * replacement for TreeTagger: it does not read the model and does not
+	 * disambiguate words in context.
+	 */
+	public static final String PARAM_BACKEND = "Backend";
+	@ConfigurationParameter(name = PARAM_BACKEND, mandatory=false, defaultValue="process")
+	private String backendAsString;
+	@SuppressWarnings("rawtypes")
+	private Class<? extends org.annolab.tt4j.TreeTaggerWrapper> backend;
+	
+	/*
+	 * A round-trip taking longer than Timeout ms plus TimeoutPerToken ms 
+	 * per token kills its process, 0 disables the watchdog
+	 */
+	public static final String PARAM_TIMEOUT = "Timeout";
+	@ConfigurationParameter(name = PARAM_TIMEOUT, mandatory=false, defaultValue="0")
+	private long timeout;
+	
+	public static final String PARAM_TIMEOUT_PER_TOKEN = "TimeoutPerToken";
+	@ConfigurationParameter(name = PARAM_TIMEOUT_PER_TOKEN, mandatory=false, defaultValue="0")
+	private long timeoutPerToken;
+	
+	/*
+	 * Number of times a failed round-trip is retried on a new process, 
+	 * waiting RetryBackoff ms before the first retry and twice as long 
+	 * before each next one
+	 */
+	public static final String PARAM_MAX_RETRIES = "MaxRetries";
+	@ConfigurationParameter(name = PARAM_MAX_RETRIES, mandatory=false, defaultValue="0")
+	private int maxRetries;
+	
+	public static final String PARAM_RETRY_BACKOFF = "RetryBackoff";
+	@ConfigurationParameter(name = PARAM_RETRY_BACKOFF, mandatory=false, defaultValue="100")
+	private long retryBackoff;
+	
+	/*
+	 * What happens to documents that could not be tagged, skip: they are 
+	 * left untagged, fail: process fails, fallback: their tokens get 
+	 * FallbackTag and their covered text as lemma, or their token cache 
+	 * entry. Results are only written once a round-trip succeeds, unless 
+	 * the policy is fail without retries: they are then written while 
+	 * TreeTagger answers, and a failed document may be partially tagged.
+	 */
+	public static final String PARAM_FAILURE_POLICY = "FailurePolicy";
+	@ConfigurationParameter(name = PARAM_FAILURE_POLICY, mandatory=false, defaultValue="skip")
+	private String failurePolicyAsString;
+	
+	public static final String PARAM_FALLBACK_TAG = "FallbackTag";
+	@ConfigurationParameter(name = PARAM_FALLBACK_TAG, mandatory=false, defaultValue="UNKNOWN")
+	private String fallbackTag;
+	
 	// Resources
 	@ExternalResource(key = TreeTaggerParameter.KEY_TT_PARAMETER)
 	private TreeTaggerParameter ttParameter;
+	private TreeTaggerParameter.Model descriptor;
+	private TreeTaggerParameter.Model model;
+	private final LinkedHashMap<TreeTaggerParameter.Model, TokenCache> warmModels = new LinkedHashMap<TreeTaggerParameter.Model, TokenCache>(16, 0.75f, true);
+
+	@ExternalResource(key = TreeTaggerProcessPool.KEY_TT_PROCESS_POOL, mandatory=false)
+	private TreeTaggerProcessPool ttProcessPool;
+
+	@ExternalResource(key = TreeTaggerStatistics.KEY_TT_METRICS, mandatory=false)
+	private TreeTaggerMetrics metrics;
+	private boolean acquiredStatistics;
+
+	@ExternalResource(key = TreeTaggerTagset.KEY_TT_TAGSET, mandatory=false)
+	private TreeTaggerTagset tagset;
+	private final Map<TreeTaggerParameter.Model, TreeTaggerTagset> modelTagsets = new HashMap<TreeTaggerParameter.Model, TreeTaggerTagset>();
 
 	
 	
@@ -68,43 +439,183 @@ public class TreeTaggerWrapper extends JCasAnnotator_ImplBase {
 	private String tagType;
 
 	
-	private Handler handler;
-	private Adapter adapter;
-	private org.annolab.tt4j.TreeTaggerWrapper<Annotation> wrapper;	
+	private AnnotationHandler handler;
+	private AnnotationAdapter adapter;
+	private TokenCache tokenCache;
+	private PreTagger preTagger;
+	private Pipeline<Results> workers;
+	private Pipeline<Results> pipeline;
+	private ProcessSupervisor supervisor;
+	private long tokenCount;
+	/*
+	 * Documents of the current call tagged or skipped so far, skipped, and
+	 * being tagged, so that a failure only counts the batch it stopped
+	 */
+	private int documentsDone;
+	private int documentsSkipped;
+	private int documentsInFlight;
+	private CachedDocuments documentCache;
+	private TaggingOutput output;
+	private Recorder recorder;
+	private static final String[] WARM_UP_TOKENS = { "This", "is", "a", "test", "." };
+	private volatile boolean started;
+	private volatile Exception startupFailure;
 	
-	private Type getAnnotationType(JCas cas) {
-		return cas.getTypeSystem().getType(this.annotationType);
+	/*
+	 * Type system the types and features below were resolved against
+	 */
+	private TypeSystem typeSystem;
+	private Type tokenType;
+	private TokenScope scope;
+	private Chunker chunker;
+	private Type languageType;
+	private Feature languageFeature;
+	
+	private Type getAnnotationType(TypeSystem typeSystem) {
+		return typeSystem.getType(this.annotationType);
 	}
 	
-	private Type getTagAnnotationType(JCas cas) {
-		return cas.getTypeSystem().getType(this.tagType);
+	private Type getTagAnnotationType(TypeSystem typeSystem) {
+		return typeSystem.getType(this.tagType);
 	}
 	
-	private Feature getTagFeature(JCas cas,Type type) {
+	private Feature getTagFeature(TypeSystem typeSystem,Type type) {
 		if (this.updateAnnotationFeatures) {
 			return type.getFeatureByBaseName(this.tagFeature);
 		} else {
-			Type tagType = this.getTagAnnotationType(cas);
+			Type tagType = this.getTagAnnotationType(typeSystem);
 			return tagType.getFeatureByBaseName(this.tagFeature);
 		}
 	}
 	
-	private Type getLemmaAnnotationType(JCas cas) {
-		return cas.getTypeSystem().getType(this.lemmaType);
+	private Type getLemmaAnnotationType(TypeSystem typeSystem) {
+		return typeSystem.getType(this.lemmaType);
 	}
 	
-	private Feature getLemmaFeature(JCas cas,Type type) {
-		if (this.updateAnnotationFeatures) {
+	private Feature getLemmaFeature(TypeSystem typeSystem,Type type) {
+		if (this.lemmaFeature == null) {
+			return null;
+		} else if (this.updateAnnotationFeatures) {
 			return type.getFeatureByBaseName(this.lemmaFeature);
 		} else {
-			Type lemmaType = this.getLemmaAnnotationType(cas);
+			Type lemmaType = this.getLemmaAnnotationType(typeSystem);
 			return lemmaType.getFeatureByBaseName(this.lemmaFeature);
 		}
 	}
 	
+	private boolean isBulk() {
+		return this.bulkAnnotationCreation && !this.updateAnnotationFeatures;
+	}
+	
+	private void typeSystemInit(TypeSystem typeSystem) {
+		this.tokenType = this.getAnnotationType(typeSystem);
+		this.recorder.setTokenType(this.tokenType);
+		if (this.documentCache != null) {
+			this.documentCache.setTokenType(this.tokenType);
+		}
+		this.handler.setTagFeature(this.getTagFeature(typeSystem, this.tokenType));
+		this.handler.setLemmaFeature(this.getLemmaFeature(typeSystem, this.tokenType));
+		this.handler.enableCombined(this.isBulk() && this.tagType != null && this.tagType.equals(this.lemmaType));
+		Type sentenceType = null;
+		if (this.sentenceTypeName != null) {
+			sentenceType = typeSystem.getType(this.sentenceTypeName);
+			if (sentenceType == null) {
+				throw new IllegalArgumentException("Unknown sentence type " + this.sentenceTypeName);
+			}
+		}
+		this.chunker = new Chunker(this.tokenType, sentenceType, this.maxChunkSize);
+		this.scope = new TokenScope(this.tokenType, this.getTypes(typeSystem, this.includeTypeNames), this.getTypes(typeSystem, this.excludeTypeNames));
+		if (this.documentCache != null) {
+			this.documentCache.setScope(this.scope);
+		}
+		Feature tagFeature = this.getTagFeature(typeSystem, this.tokenType);
+		this.handler.enableTagStrings(!"id".equals(this.tagOutput));
+		if (!"string".equals(this.tagOutput)) {
+			Feature tagIdFeature = tagFeature.getDomain().getFeatureByBaseName(this.tagIdFeatureName);
+			if (tagIdFeature == null) {
+				throw new IllegalArgumentException("Unknown tag ID feature " + tagFeature.getDomain().getName() + ":" + this.tagIdFeatureName);
+			}
+			this.handler.setTagIdFeature(tagIdFeature);
+		}
+		if (this.alternativeTagsFeatureName != null) {
+			Feature alternativeTagsFeature = tagFeature.getDomain().getFeatureByBaseName(this.alternativeTagsFeatureName);
+			if (alternativeTagsFeature == null) {
+				throw new IllegalArgumentException("Unknown alternative tags feature " + tagFeature.getDomain().getName() + ":" + this.alternativeTagsFeatureName);
+			}
+			this.handler.setAlternativeTagsFeature(alternativeTagsFeature);
+		}
+		if (this.alternativeProbabilitiesFeatureName != null) {
+			Feature alternativeProbabilitiesFeature = tagFeature.getDomain().getFeatureByBaseName(this.alternativeProbabilitiesFeatureName);
+			if (alternativeProbabilitiesFeature == null) {
+				throw new IllegalArgumentException("Unknown alternative probabilities feature " + tagFeature.getDomain().getName() + ":" + this.alternativeProbabilitiesFeatureName);
+			}
+			this.handler.setAlternativeProbabilitiesFeature(alternativeProbabilitiesFeature);
+		}
+		if (this.documentProbabilitiesFeatureName != null) {
+			String[] path = this.documentProbabilitiesFeatureName.split(":");
+			Type type = typeSystem.getType(path[0]);
+			if (type == null || path.length != 2) {
+				throw new IllegalArgumentException("Unknown document probabilities feature " + this.documentProbabilitiesFeatureName);
+			}
+			Feature feature = type.getFeatureByBaseName(path[1]);
+			if (feature == null) {
+				throw new IllegalArgumentException("Unknown document probabilities feature " + this.documentProbabilitiesFeatureName);
+			}
+			this.recorder.setDocumentProbabilities(type, feature);
+		}
+		if (this.documentTagIdsFeatureName != null) {
+			String[] path = this.documentTagIdsFeatureName.split(":");
+			Type type = typeSystem.getType(path[0]);
+			if (type == null || path.length != 2) {
+				throw new IllegalArgumentException("Unknown document tag IDs feature " + this.documentTagIdsFeatureName);
+			}
+			Feature feature = type.getFeatureByBaseName(path[1]);
+			if (feature == null) {
+				throw new IllegalArgumentException("Unknown document tag IDs feature " + this.documentTagIdsFeatureName);
+			}
+			this.recorder.setDocumentTagIds(type, feature);
+		}
+		if (this.outputIdFeatureName != null) {
+			String[] path = this.outputIdFeatureName.split(":");
+			Type type = typeSystem.getType(path[0]);
+			if (type == null || path.length != 2) {
+				throw new IllegalArgumentException("Unknown output id feature " + this.outputIdFeatureName);
+			}
+			Feature feature = type.getFeatureByBaseName(path[1]);
+			if (feature == null) {
+				throw new IllegalArgumentException("Unknown output id feature " + this.outputIdFeatureName);
+			}
+			this.recorder.setOutputId(type, feature);
+		}
+		if (this.languageFeatureName != null) {
+			String[] path = this.languageFeatureName.split(":");
+			this.languageType = typeSystem.getType(path[0]);
+			if (this.languageType == null || path.length != 2) {
+				throw new IllegalArgumentException("Unknown language feature " + this.languageFeatureName);
+			}
+			this.languageFeature = this.languageType.getFeatureByBaseName(path[1]);
+			if (this.languageFeature == null) {
+				throw new IllegalArgumentException("Unknown language feature " + this.languageFeatureName);
+			}
+		}
+		this.typeSystem = typeSystem;
+	}
+	
+	private Type[] getTypes(TypeSystem typeSystem, String[] names) {
+		Type[] types = new Type[names.length];
+		for (int i = 0; i < names.length; i++) {
+			types[i] = typeSystem.getType(names[i]);
+			if (types[i] == null || !typeSystem.subsumes(typeSystem.getType(CAS.TYPE_NAME_ANNOTATION), types[i])) {
+				throw new IllegalArgumentException("Unknown annotation type " + names[i]);
+			}
+		}
+		return types;
+	}
+	
 	@Override
 	public void initialize(UimaContext context) throws ResourceInitializationException {
 		super.initialize(context);
+		long start = System.nanoTime();
 		try {
 			// read parameters from context
 			this.ttHomeDirectory = (String) context.getConfigParameterValue(PARAM_TT_HOME_DIRECTORY);
@@ -116,41 +627,140 @@ public class TreeTaggerWrapper extends JCasAnnotator_ImplBase {
 
 			// read resources from context
 			this.ttParameter = (TreeTaggerParameter) context.getResourceObject(TreeTaggerParameter.KEY_TT_PARAMETER);
+			this.ttProcessPool = (TreeTaggerProcessPool) context.getResourceObject(TreeTaggerProcessPool.KEY_TT_PROCESS_POOL);
+			if (this.ttProcessPool == null) {
+				this.ttProcessPool = TreeTaggerProcessPool.getInstance();
+			}
+			this.metrics = (TreeTaggerMetrics) context.getResourceObject(TreeTaggerStatistics.KEY_TT_METRICS);
+			if (this.metrics == null) {
+				this.metrics = TreeTaggerStatistics.getInstance();
+			}
+			this.tagset = (TreeTaggerTagset) context.getResourceObject(TreeTaggerTagset.KEY_TT_TAGSET);
+			if (!Arrays.asList("string", "id", "both").contains(this.tagOutput)) {
+				throw new IllegalArgumentException("Unknown tag output " + this.tagOutput);
+			}
+			if (this.tagsetTags.length > 0) {
+				if (this.tagset != null) {
+					throw new IllegalArgumentException(PARAM_TAGSET + " cannot be used with a " + TreeTaggerTagset.KEY_TT_TAGSET + " resource");
+				}
+				this.tagset = new TreeTaggerTagset(Arrays.asList(this.tagsetTags));
+			}
+			if (this.poolSize <= 0) {
+				this.poolSize = Runtime.getRuntime().availableProcessors();
+			}
+			this.startupMode = StartupMode.valueOf(this.startupModeAsString.toUpperCase(Locale.US));
+			ProcessSupervisor.FailurePolicy failurePolicy = ProcessSupervisor.FailurePolicy.valueOf(this.failurePolicyAsString.toUpperCase(Locale.US));
+			if ("lookup".equalsIgnoreCase(this.backendAsString)) {
+				this.backend = LexiconLookupTagger.class;
+			} else if ("process".equalsIgnoreCase(this.backendAsString)) {
+				this.backend = org.annolab.tt4j.TreeTaggerWrapper.class;
+			} else {
+				throw new IllegalArgumentException("Unknown backend " + this.backendAsString);
+			}
+			// the lookup backend starts no process
+			this.supervisor = new ProcessSupervisor(this.ttProcessPool, this.metrics, this.backend != LexiconLookupTagger.class);
+			this.supervisor.setTimeout(this.timeout, this.timeoutPerToken);
+			this.supervisor.setRetries(this.maxRetries, this.retryBackoff);
+			this.supervisor.setFailurePolicy(failurePolicy, this.fallbackTag);
+			if (this.tagset == null && this.isTagIds() && this.backend == LexiconLookupTagger.class) {
+				// lexicons have no tagset to read
+				throw new IllegalArgumentException("Tag IDs of the lookup " + PARAM_BACKEND + " require a " + TreeTaggerTagset.KEY_TT_TAGSET + " resource or " + PARAM_TAGSET);
+			}
 
 			
-			System.setProperty("treetagger.home", ttHomeDirectory);
+			if (ttHomeDirectory != null) {
+				System.setProperty("treetagger.home", ttHomeDirectory);
+			}
 			
 			/*
 			 * Parse TreeTagger arguments
 			 */
-			StringTokenizer st = new StringTokenizer(ttArgumentsAsString, " ");
-			ttArguments = new String[st.countTokens()];
-			int index = 0;
-			while (st.hasMoreElements()) {
-				ttArguments[index] = st.nextToken();
-				index++;
-			}
+			this.ttOptions = TreeTaggerOptions.parse(this.ttArgumentsAsString);
 					
 			/*
 			 * Load parameter file
 			 */
 			ttParameter.override(ttParameterFile);
+			if (this.watchParameterFile) {
+				ttParameter.watch();
+			}
 			
 			// init wrapper
-			this.handler = new Handler();
+			this.handler = new AnnotationHandler();
 			this.handler.enableUpdate(updateAnnotationFeatures);
-			this.adapter = new Adapter();
-			this.wrapper = new org.annolab.tt4j.TreeTaggerWrapper<Annotation>();
-			this.wrapper.setHandler(this.handler);
-			this.wrapper.setAdapter(this.adapter);
-			this.wrapper.setModel(this.ttParameter.getModel());				
-
+			this.recorder = new Recorder(this.lemmaFeature != null, this.maxAlternatives);
+			this.handler.setRecorder(this.recorder);
+			if (!this.casOutput) {
+				if (this.outputFile == null) {
+					throw new IllegalArgumentException(PARAM_CAS_OUTPUT + " can only be false with an " + PARAM_OUTPUT_FILE);
+				}
+				this.handler.enableCasOutput(false);
+			}
+			if (this.probabilityThreshold > 0) {
+				if (this.documentCacheDirectory != null) {
+					// cached documents have no probabilities
+					throw new IllegalArgumentException(PARAM_PROBABILITY_THRESHOLD + " cannot be used with a " + PARAM_DOCUMENT_CACHE_DIRECTORY);
+				}
+				if (this.backend == LexiconLookupTagger.class) {
+					// the lexicon gives one analysis per word
+					throw new IllegalArgumentException(PARAM_PROBABILITY_THRESHOLD + " cannot be used with the lookup " + PARAM_BACKEND);
+				}
+				// 0.1f would otherwise be widened to 0.100000001490
+				this.ttProbabilityThreshold = Double.valueOf(Float.toString(this.probabilityThreshold));
+				if (this.maxAlternatives < 1) {
+					throw new IllegalArgumentException(PARAM_MAX_ALTERNATIVES + " must be at least 1");
+				}
+				this.handler.enableProbabilities(this.maxAlternatives);
+			} else if (this.alternativeTagsFeatureName != null || this.alternativeProbabilitiesFeatureName != null || this.documentProbabilitiesFeatureName != null) {
+				throw new IllegalArgumentException("Alternatives can only be written with a " + PARAM_PROBABILITY_THRESHOLD);
+			}
+			if (this.lowerCaseLocaleAsString != null && !this.lowerCaseLocaleAsString.isEmpty()) {
+				this.adapter = new AnnotationAdapter(Locale.forLanguageTag(this.lowerCaseLocaleAsString));
+			} else {
+				this.adapter = new AnnotationAdapter(null);
+			}
+			if (this.lemmaDictionarySize > 0) {
+				this.handler.setLemmaDictionary(new StringInterner(this.lemmaDictionarySize));
+			}
+			if (this.tokenCacheSize > 0) {
+				this.tokenCache = this.createTokenCache();
+			}
+			if (this.preTaggingRules.length > 0 || this.preTaggingLexicon != null) {
+				this.preTagger = new PreTagger(this.preTaggingRules, this.preTaggingLexicon == null ? null : new File(this.preTaggingLexicon));
+			}
+			if (this.documentCacheDirectory != null) {
+				this.documentCache = new CachedDocuments(this.ttOptions, this.backend, this.lemmaFeature != null, this.preTaggingRules, this.preTaggingLexicon);
+				this.documentCache.setAdapter(this.adapter);
+				this.documentCache.setRecorder(this.recorder);
+			}
 			
-			String[] path = lemmaFeature.split(":");
+			String[] path;
+			if (lemmaFeature != null) {
+				path = lemmaFeature.split(":");
+				if (path.length == 2) {
+					this.lemmaType = path[0];
+					this.lemmaFeature = path[1];
+				} 
+			}
+			path = tagFeature.split(":");
 			if (path.length == 2) {
-				this.lemmaType = path[0];
-				this.lemmaFeature = path[1];
+				this.tagType = path[0];
+				this.tagFeature = path[1];
 			} 
+			
+			if (this.startupMode == StartupMode.EAGER) {
+				this.validate();
+			}
+			if (this.startupMode != StartupMode.LAZY) {
+				this.start();
+			}
+			if (this.startupMode == StartupMode.EAGER) {
+				this.warmUp(start);
+			}
+			if (this.metrics instanceof TreeTaggerStatistics) {
+				((TreeTaggerStatistics) this.metrics).acquire();
+				this.acquiredStatistics = true;
+			}
 		} catch (ResourceAccessException e) {
 			throw new ResourceInitializationException(e);
 		} catch (Exception e) {
@@ -158,104 +768,787 @@ public class TreeTaggerWrapper extends JCasAnnotator_ImplBase {
 		}
 	}
 	
+	/*
+	 * Fails fast on a wrong installation directory or encoding, the model 
+	 * location being checked when it is resolved
+	 */
+	private void validate() throws IOException {
+		if (this.ttHomeDirectory != null && !new File(this.ttHomeDirectory).isDirectory()) {
+			throw new IllegalArgumentException("TreeTagger home directory " + this.ttHomeDirectory + " does not exist");
+		}
+		if (this.backend != LexiconLookupTagger.class) {
+			DefaultExecutableResolver resolver = new DefaultExecutableResolver();
+			resolver.setPlatformDetector(new PlatformDetector());
+			File executable = new File(resolver.getExecutable());
+			if (!executable.canExecute()) {
+				throw new IllegalArgumentException("TreeTagger executable " + executable + " cannot be executed");
+			}
+		}
+		String encoding = this.ttParameter.getEncoding();
+		boolean supported;
+		try {
+			supported = encoding != null && Charset.isSupported(encoding);
+		} catch (IllegalCharsetNameException e) {
+			supported = false;
+		}
+		if (!supported) {
+			throw new IllegalArgumentException("Unsupported model encoding " + encoding);
+		}
+	}
+	
+	/*
+	 * What the lazy startup mode defers until the first document
+	 */
+	private synchronized void start() throws IOException, InterruptedException, TimeoutException, AnalysisEngineProcessException {
+		if (this.started) {
+			return;
+		}
+		if (this.documentCacheDirectory != null) {
+			this.documentCache.open(new File(this.documentCacheDirectory), this.documentCacheMaxSize << 20);
+		}
+		if (this.outputFile != null) {
+			this.output = TaggingOutput.open(new File(this.outputFile));
+			this.recorder.setOutput(this.output);
+		}
+		if (this.parallelism > 1) {
+			this.workers = new Pipeline<Results>("TreeTaggerWrapper-worker", this.parallelism);
+		}
+		if (this.pipelineWindow > 0) {
+			this.pipeline = new Pipeline<Results>("TreeTaggerWrapper-pipeline", this.pipelineWindow);
+		}
+		this.supervisor.start();
+		
+		/*
+		 * Resolve the model in the process pool
+		 */
+		this.descriptor = this.getDescriptor();
+		Collection<TreeTaggerParameter.Model> models = this.descriptor.getModels();
+		if (models.isEmpty()) {
+			throw new IllegalArgumentException("No " + this.getModelKind() + " in the parameter file");
+		}
+		this.model = models.iterator().next();
+		this.warm(this.model, this.tokenCache);
+		this.useTagset();
+		this.ttProcessPool.release(this.ttProcessPool.borrow(this.model, this.ttOptions, this.backend, this.ttProbabilityThreshold, this.poolSize, this.poolBorrowTimeout));
+		this.started = true;
+	}
+	
+	/*
+	 * Starts a process and tags a short sentence with it in the background.
+	 * A failure is reported by the next call to process.
+	 */
+	private void warmUp(final long start) {
+		Thread thread = new Thread(new Runnable() {
+			
+			@Override
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			public void run() {
+				try {
+					org.annolab.tt4j.TreeTaggerWrapper<Annotation> wrapper = ttProcessPool.borrow(model, ttOptions, backend, ttProbabilityThreshold, poolSize, poolBorrowTimeout);
+					try {
+						org.annolab.tt4j.TreeTaggerWrapper<String> strings = (org.annolab.tt4j.TreeTaggerWrapper) wrapper;
+						strings.setAdapter(new TokenAdapter<String>() {
+							
+							@Override
+							public String getText(String token) {
+								return token;
+							}
+						});
+						strings.setHandler(new TokenHandler<String>() {
+							
+							@Override
+							public void token(String token, String tag, String lemma) {
+								// only warming up
+							}
+						});
+						strings.process(Arrays.asList(WARM_UP_TOKENS));
+					} finally {
+						ttProcessPool.release(wrapper);
+					}
+					getContext().getLogger().log(Level.INFO, "TreeTagger started in " + (System.nanoTime() - start) / 1000000 + " ms");
+				} catch (Exception e) {
+					startupFailure = e;
+					getContext().getLogger().log(Level.SEVERE, "TreeTagger failed to start: " + e.getMessage());
+				}
+			}
+		}, "TreeTaggerWrapper-warmup");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
 	@Override
 	public void process(JCas cas) throws AnalysisEngineProcessException {
+		this.process(Collections.singletonList(cas));
+	}
+	
+	/*
+	 * Tags several CASes, sending the tokens of up to BatchSize CASes
+	 * to TreeTagger in a single round-trip. CASes with more than 
+	 * MaxChunkSize tokens are tagged alone, one chunk at a time.
+	 * 
+	 * Only reached by callers holding the annotator, such as a 
+	 * TreeTaggerBatcher: the UIMA framework calls process(JCas).
+	 */
+	public void process(Collection<JCas> cases) throws AnalysisEngineProcessException {
+		long start = System.nanoTime();
+		this.tokenCount = 0;
+		this.documentsDone = 0;
+		this.documentsSkipped = 0;
+		this.documentsInFlight = cases.size();
 		try {
-			this.wrapper.setModel(this.ttParameter.getModel());
-			Type type = this.getAnnotationType(cas);
-			Feature tagFeature = this.getTagFeature(cas,type);
-			Feature lemmaFeature = this.getLemmaFeature(cas,type);
-			this.handler.setTagFeature(tagFeature);
-			this.handler.setLemmaFeature(lemmaFeature);
-			AnnotationIndex<Annotation> index = cas.getAnnotationIndex(type);
-			FSIterator<Annotation> iter = index.iterator();
-			List<Annotation> tokens = new ArrayList<Annotation>();
-			while (iter.hasNext()) {
-				Annotation token = iter.next();
-				tokens.add(token);
-			}
-			this.wrapper.process(tokens);
-		} catch (TreeTaggerException e) {
-			Throwable c = e.getCause();
-			if (c == null) {
-				this.getContext().getLogger().log(Level.WARNING,e.getMessage());
-			} else {
-				this.getContext().getLogger().log(Level.WARNING,c.getMessage());				
+			if (this.startupFailure != null) {
+				throw new AnalysisEngineProcessException(this.startupFailure);
 			}
-		} catch (Exception e) {
+			if (!this.started) {
+				try {
+					this.start();
+				} catch (Exception e) {
+					throw new AnalysisEngineProcessException(e);
+				}
+			}
+			this.reloadModel();
+			for (Map.Entry<TreeTaggerParameter.Model, List<JCas>> group : this.groupByModel(cases).entrySet()) {
+				if (group.getValue().isEmpty()) {
+					continue;
+				}
+				this.documentsInFlight = group.getValue().size();
+				this.useModel(group.getKey());
+				this.documentsInFlight = 0;
+				List<List<JCas>> batches = new ArrayList<List<JCas>>();
+				List<JCas> batch = new ArrayList<JCas>(Math.min(this.batchSize, group.getValue().size()));
+				for (JCas cas : group.getValue()) {
+					if (this.maxChunkSize > 0 && cas.getAnnotationIndex(this.tokenType).size() > this.maxChunkSize) {
+						this.documentsInFlight = 1;
+						this.processChunks(cas);
+						this.done();
+						continue;
+					}
+					batch.add(cas);
+					if (batch.size() == this.batchSize) {
+						batches.add(batch);
+						batch = new ArrayList<JCas>(this.batchSize);
+					}
+				}
+				if (!batch.isEmpty()) {
+					batches.add(batch);
+				}
+				if (this.pipeline != null && batches.size() > 1) {
+					this.processPipelined(batches);
+				} else {
+					for (List<JCas> b : batches) {
+						this.documentsInFlight = b.size();
+						this.processBatch(b);
+						this.done();
+					}
+				}
+			}
+		} catch (AnalysisEngineProcessException e) {
+			this.metrics.failed(this.documentsInFlight);
+			this.metrics.processed(this.documentsDone - this.documentsSkipped, this.tokenCount, System.nanoTime() - start);
+			throw e;
+		}
+		this.metrics.processed(this.documentsDone - this.documentsSkipped, this.tokenCount, System.nanoTime() - start);
+	}
+	
+	private void done() {
+		this.documentsDone += this.documentsInFlight;
+		this.documentsInFlight = 0;
+	}
+	
+	private void processBatch(List<JCas> batch) throws AnalysisEngineProcessException {
+		this.adapter.prepare(batch);
+		try {
+			List<JCas> misses = batch;
+			List<byte[]> keys = null;
+			if (this.documentCache != null || this.recorder.isRecordingAll()) {
+				this.recorder.open();
+			}
+			if (this.recorder.isRecordingAll()) {
+				for (JCas cas : batch) {
+					this.recorder.add(cas);
+				}
+			}
+			if (this.documentCache != null) {
+				misses = new ArrayList<JCas>(batch.size());
+				keys = new ArrayList<byte[]>(batch.size());
+				for (JCas cas : batch) {
+					byte[] key = this.getDocumentKey(cas);
+					if (!this.writeCachedDocument(cas, key)) {
+						misses.add(cas);
+						keys.add(key);
+						this.recorder.add(cas);
+					}
+				}
+			}
+			if (!misses.isEmpty()) {
+				List<Segment> segments = new ArrayList<Segment>(misses.size());
+				for (JCas cas : misses) {
+					segments.addAll(this.scope.getSegments(cas));
+				}
+				if ((segments.isEmpty() || this.doProcess(segments, misses.size())) && this.documentCache != null) {
+					for (int i = 0; i < misses.size(); i++) {
+						this.documentCache.put(misses.get(i), keys.get(i));
+					}
+				}
+			}
+			this.recorder.write(batch);
+		} finally {
+			this.adapter.clear();
+			this.recorder.close();
+		}
+	}
+	
+	/*
+	 * Picks up a reloaded model between documents
+	 */
+	private void reloadModel() throws AnalysisEngineProcessException {
+		TreeTaggerParameter.Model current = this.getDescriptor();
+		if (current != this.descriptor) {
+			this.getContext().getLogger().log(Level.INFO, "Switching to version " + current.getVersion() + " of the models");
+			this.coolAll();
+			this.descriptor = current;
+			this.model = current.forLanguage(this.model.getLanguage());
+			this.tokenCache = this.createTokenCache();
+			this.warm(this.model, this.tokenCache);
+			this.useTagset();
+		}
+	}
+	
+	/*
+	 * The tagset of the model of the next documents, read from the model 
+	 * file the first time the model is used, unless a tagset is given
+	 */
+	private void useTagset() throws AnalysisEngineProcessException {
+		if (!this.isTagIds()) {
+			return;
+		}
+		if (this.tagset != null) {
+			this.handler.setTagset(this.tagset);
+			this.recorder.setTagset(this.tagset);
+			return;
+		}
+		TreeTaggerTagset tagset = this.modelTagsets.get(this.model);
+		if (tagset == null) {
+			try {
+				tagset = new TreeTaggerTagset(TreeTaggerModelUtil.getTagset(this.getModelFile(this.model), this.model.getEncoding()));
+			} catch (IOException e) {
+				throw new AnalysisEngineProcessException(e);
+			}
+			this.modelTagsets.put(this.model, tagset);
+		}
+		this.handler.setTagset(tagset);
+		this.recorder.setTagset(tagset);
+	}
+	
+	/*
+	 * The CASes to tag with each model, starting with the current one
+	 */
+	private Map<TreeTaggerParameter.Model, List<JCas>> groupByModel(Collection<JCas> cases) throws AnalysisEngineProcessException {
+		Map<TreeTaggerParameter.Model, List<JCas>> groups = new LinkedHashMap<TreeTaggerParameter.Model, List<JCas>>();
+		groups.put(this.model, new ArrayList<JCas>(cases.size()));
+		for (JCas cas : cases) {
+			TypeSystem typeSystem = cas.getTypeSystem();
+			if (typeSystem != this.typeSystem) {
+				this.typeSystemInit(typeSystem);
+			}
+			TreeTaggerParameter.Model model = this.getModel(cas);
+			List<JCas> group = groups.get(model);
+			if (group == null) {
+				group = new ArrayList<JCas>();
+				groups.put(model, group);
+			}
+			group.add(cas);
+		}
+		return groups;
+	}
+	
+	private TreeTaggerParameter.Model getModel(JCas cas) throws AnalysisEngineProcessException {
+		String language = null;
+		if (this.languageType != null) {
+			FSIterator<FeatureStructure> iterator = cas.getCas().getIndexRepository().getAllIndexedFS(this.languageType);
+			if (iterator.hasNext()) {
+				language = iterator.next().getStringValue(this.languageFeature);
+			}
+		}
+		if (language == null) {
+			language = cas.getDocumentLanguage();
+		}
+		TreeTaggerParameter.Model model = this.descriptor.forLanguage(language);
+		if (model.getFile() == null) {
+			throw new AnalysisEngineProcessException(new IllegalArgumentException("No " + this.getModelKind() + " for language " + language));
+		}
+		return model;
+	}
+	
+	private boolean isTagIds() {
+		return !"string".equals(this.tagOutput) || this.documentTagIdsFeatureName != null;
+	}
+	
+	private String getModelKind() {
+		return this.backend == LexiconLookupTagger.class ? "lexicon" : "TreeTagger model";
+	}
+	
+	/*
+	 * The models, or the lexicons of the lookup backend
+	 */
+	private TreeTaggerParameter.Model getDescriptor() {
+		TreeTaggerParameter.Model descriptor = this.ttParameter.getDescriptor();
+		return this.backend == LexiconLookupTagger.class ? descriptor.getLexicons() : descriptor;
+	}
+	
+	/*
+	 * Switches to the model of the next documents, each model has its 
+	 * own token cache
+	 */
+	private void useModel(TreeTaggerParameter.Model model) throws AnalysisEngineProcessException {
+		if (model == this.model) {
+			return;
+		}
+		int evictions = 0;
+		if (this.warmModels.containsKey(model)) {
+			this.tokenCache = this.warmModels.get(model);
+		} else {
+			this.tokenCache = this.createTokenCache();
+			this.warm(model, this.tokenCache);
+			Iterator<TreeTaggerParameter.Model> eldest = this.warmModels.keySet().iterator();
+			while (this.warmModelsSize > 0 && this.warmModels.size() > this.warmModelsSize) {
+				TreeTaggerParameter.Model evicted = eldest.next();
+				eldest.remove();
+				this.ttProcessPool.retire(evicted, this.ttOptions, this.backend, this.ttProbabilityThreshold);
+				this.modelTagsets.remove(evicted);
+				evictions++;
+			}
+		}
+		this.model = model;
+		this.useTagset();
+		this.metrics.switched(1, evictions);
+	}
+	
+	/*
+	 * The pool stops the processes of a model once no annotator keeps it 
+	 * warm
+	 */
+	private void warm(TreeTaggerParameter.Model model, TokenCache tokenCache) {
+		this.warmModels.put(model, tokenCache);
+		this.ttProcessPool.retain(model, this.ttOptions, this.backend, this.ttProbabilityThreshold);
+	}
+	
+	private void coolAll() {
+		for (TreeTaggerParameter.Model model : this.warmModels.keySet()) {
+			this.ttProcessPool.retire(model, this.ttOptions, this.backend, this.ttProbabilityThreshold);
+		}
+		this.warmModels.clear();
+		this.modelTagsets.clear();
+	}
+	
+	private TokenCache createTokenCache() {
+		return this.tokenCacheSize > 0 ? new TokenCache(this.tokenCacheSize, Arrays.asList(this.tokenCacheTags)) : null;
+	}
+	
+	private byte[] getDocumentKey(JCas cas) throws AnalysisEngineProcessException {
+		try {
+			return this.documentCache.getKey(cas, this.model.getModel(), this.getModelFile(this.model));
+		} catch (IOException e) {
 			throw new AnalysisEngineProcessException(e);
 		}
 	}
 	
-	private class Handler implements TokenHandler<Annotation> {	
+	private File getModelFile(TreeTaggerParameter.Model model) throws IOException {
+		if (this.backend == LexiconLookupTagger.class) {
+			return LexiconLookupTagger.resolve(model.getFile());
+		}
+		DefaultModelResolver resolver = new DefaultModelResolver();
+		resolver.setPlatformDetector(new PlatformDetector());
+		return resolver.getModel(model.getModel()).getFile();
+	}
 	
-		private Feature tagFeature;
-		
-		public void setTagFeature(Feature feature) {
-			this.tagFeature = feature;
+	private boolean writeCachedDocument(JCas cas, byte[] key) {
+		long start = System.nanoTime();
+		int written = this.documentCache.write(cas, key, this.handler, this.isBulk());
+		if (written < 0) {
+			return false;
 		}
-		
-		private Feature lemmaFeature;
-		
-		public void setLemmaFeature(Feature feature) {
-			this.lemmaFeature = feature;
+		this.handler.takeWriteNanos();
+		this.metrics.written(System.nanoTime() - start);
+		this.tokenCount += written;
+		return true;
+	}
+	
+	/*
+	 * Tags up to PipelineWindow batches ahead on the pipeline threads 
+	 * while the calling thread writes the results of the first batch, in 
+	 * batch order. Submitting waits for the first batch once the window
+	 * is full.
+	 */
+	private void processPipelined(List<List<JCas>> batches) throws AnalysisEngineProcessException {
+		List<JCas> cases = new ArrayList<JCas>();
+		List<Stage> stages = new ArrayList<Stage>(batches.size());
+		for (List<JCas> batch : batches) {
+			cases.addAll(batch);
+			stages.add(new Stage(batch));
 		}
-		
-		private boolean update;
-		
-		public void enableUpdate(boolean enabled) {
-			this.update = enabled;
+		this.adapter.prepare(cases);
+		try {
+			if (this.documentCache != null || this.recorder.isRecordingAll()) {
+				this.recorder.open();
+			}
+			this.pipeline.run(stages.iterator(), new Pipeline.Stages<Stage, Results>() {
+
+				@Override
+				public Callable<Results> open(Stage stage) throws AnalysisEngineProcessException {
+					documentsInFlight = stage.batch.size();
+					return submit(stage);
+				}
+
+				@Override
+				public void close(Stage stage, Results results) throws AnalysisEngineProcessException {
+					documentsInFlight = stage.batch.size();
+					if (results != null && writeResults(results, stage.misses.size()) && documentCache != null) {
+						for (int i = 0; i < stage.misses.size(); i++) {
+							documentCache.put(stage.misses.get(i), stage.keys.get(i));
+						}
+					}
+					recorder.write(stage.batch);
+					done();
+				}
+			});
+		} finally {
+			this.adapter.clear();
+			this.recorder.close();
 		}
-		
-		public void token(Annotation annotation, String tag, String lemma) {
-			CAS cas = annotation.getCAS();
-			int begin = annotation.getBegin();
-			int end = annotation.getEnd();
-			String picked = null;
-			if (lemma == null) {
-				picked = annotation.getCoveredText(); // "unknown"
-			} else {
-				String lemmata[] = lemma.split("\\|");
-				if (lemmata.length == 0) {
-					picked = lemma;
-				} else {
-					picked = lemmata[lemmata.length - 1];
-				}						
+	}
+	
+	/*
+	 * Serves the documents of the batch found in the document cache, and
+	 * returns the tagging of the others, null when they have no tokens to
+	 * tag
+	 */
+	private Callable<Results> submit(Stage stage) throws AnalysisEngineProcessException {
+		for (JCas cas : stage.batch) {
+			if (this.recorder.isOpen()) {
+				this.recorder.add(cas);
 			}
-			if (picked.endsWith("?")) {
-				picked = picked.substring(0, picked.length() - 1);
+			if (this.documentCache != null) {
+				byte[] key = this.getDocumentKey(cas);
+				if (this.writeCachedDocument(cas, key)) {
+					continue;
+				}
+				stage.keys.add(key);
+			}
+			stage.misses.add(cas);
+		}
+		List<Segment> segments = new ArrayList<Segment>(stage.misses.size());
+		for (JCas cas : stage.misses) {
+			segments.addAll(this.scope.getSegments(cas));
+		}
+		return segments.isEmpty() ? null : this.tag(segments);
+	}
+	
+	/*
+	 * Writes results tagged on another thread, false when they failed
+	 */
+	private boolean writeResults(Results results, int documents) throws AnalysisEngineProcessException {
+		if (results.getFailure() != null) {
+			return this.fail(results.getTokens(), documents, results.getFailure());
+		}
+		if (this.isBulk()) {
+			long start = System.nanoTime();
+			results.create(this.handler);
+			this.metrics.written(System.nanoTime() - start);
+		} else {
+			results.write(this.handler);
+			this.metrics.written(this.handler.takeWriteNanos());
+		}
+		this.tokenCount += results.getTokens().count();
+		return true;
+	}
+	
+	private void processChunks(JCas cas) throws AnalysisEngineProcessException {
+		this.adapter.prepare(Collections.singletonList(cas));
+		try {
+			if (this.recorder.isRecordingAll()) {
+				this.recorder.open();
+				this.recorder.add(cas);
 			}
-			assert (picked != null);
-			if (this.update) {
-				this.update(cas, annotation, this.tagFeature, tag);
-				this.update(cas, annotation, this.lemmaFeature, picked);
+			List<Segment> chunks = this.chunker.chunk(this.scope.getSegments(cas));
+			boolean tagged = true;
+			if (this.workers != null && chunks.size() > 1) {
+				tagged = this.processInParallel(chunks);
 			} else {
-				this.annotate(cas, this.tagFeature, begin, end, tag);
-				this.annotate(cas, this.lemmaFeature, begin, end, picked);
+				for (Segment chunk : chunks) {
+					tagged &= this.doProcess(Collections.singletonList(chunk), 0);
+				}
 			}
+			if (!tagged) {
+				// counted once, however many of its chunks were skipped
+				this.skipped(1);
+			}
+			this.recorder.write(Collections.singletonList(cas));
+		} finally {
+			this.adapter.clear();
+			this.recorder.close();
 		}
+	}
+	
+	/*
+	 * Tags up to Parallelism chunks at once, each on its own process. 
+	 * Results are buffered by the workers and written to the CAS in chunk 
+	 * order by the calling thread only. false when a chunk was left
+	 * untagged.
+	 */
+	private boolean processInParallel(List<Segment> chunks) throws AnalysisEngineProcessException {
+		Chunks stages = new Chunks();
+		this.workers.run(chunks.iterator(), stages);
+		return stages.tagged;
+	}
+	
+	/*
+	 * Tokens are scanned and copied by the calling thread, so that workers 
+	 * never walk the indexes it is adding annotations to
+	 */
+	private Callable<Results> tag(List<Segment> segments) throws AnalysisEngineProcessException {
+		final Tokens tokens;
+		try {
+			tokens = this.createTokens(segments, true);
+		} catch (IOException e) {
+			throw new AnalysisEngineProcessException(e);
+		}
+		return new Callable<Results>() {
 
-		private void update(CAS cas, Annotation annotation, Feature feature, String value) {
-			annotation.setStringValue(feature,value);
+			@Override
+			public Results call() throws Exception {
+				Results results = null;
+				Exception failure = null;
+				for (int attempt = 0; attempt <= supervisor.getMaxRetries(); attempt++) {
+					supervisor.backOff(attempt, failure);
+					results = createResults(tokens);
+					try {
+						long start = System.nanoTime();
+						roundTrip(tokens, handler.buffer(results));
+						metrics.tagged(System.nanoTime() - start);
+						return results;
+					} catch (TreeTaggerException e) {
+						failure = e;
+					} catch (IOException e) {
+						failure = e;
+					}
+				}
+				results.setFailure(failure);
+				return results;
+			}
+		};
+	}
+	
+	private Results createResults(Tokens tokens) {
+		return new Results(tokens, this.probabilityThreshold > 0 ? this.maxAlternatives : 0);
+	}
+	
+	/*
+	 * false when the segments, of documents documents, were left untagged 
+	 * after a TreeTaggerException
+	 */
+	private boolean doProcess(List<Segment> segments, int documents) throws AnalysisEngineProcessException {
+		try {
+			Tokens tokens = this.createTokens(segments, false);
+			// what a failed attempt wrote could not be taken back
+			boolean buffered = this.isBulk() || this.supervisor.isRecovering();
+			Exception failure = null;
+			for (int attempt = 0; attempt <= this.supervisor.getMaxRetries(); attempt++) {
+				this.supervisor.backOff(attempt, failure);
+				Results results = buffered ? this.createResults(tokens) : null;
+				try {
+					long start = System.nanoTime();
+					this.roundTrip(tokens, results == null ? this.handler : this.handler.buffer(results));
+					if (results == null) {
+						tokens.writeCached(this.handler);
+						// the handler writes while tt4j reads the process output
+						long written = this.handler.takeWriteNanos();
+						this.metrics.tagged(System.nanoTime() - start - written);
+						this.metrics.written(written);
+						this.tokenCount += tokens.count();
+					} else {
+						long tagged = System.nanoTime();
+						this.metrics.tagged(tagged - start);
+						if (this.isBulk()) {
+							results.create(this.handler);
+						} else {
+							results.write(this.handler);
+						}
+						this.metrics.written(System.nanoTime() - tagged + this.handler.takeWriteNanos());
+						this.tokenCount += tokens.count();
+					}
+					return true;
+				} catch (TreeTaggerException e) {
+					failure = e;
+				} catch (IOException e) {
+					failure = e;
+				}
+				this.handler.takeWriteNanos();
+			}
+			return this.fail(tokens, documents, failure);
+		} catch (AnalysisEngineProcessException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new AnalysisEngineProcessException(e);
 		}
-		
-		private void annotate(CAS cas, Feature feature, int begin, int end, String value) {
-			Type type = feature.getDomain();
-			AnnotationFS annotation = cas.createAnnotation(type, begin, end);
-			annotation.setStringValue(feature,value);
-			cas.addFsToIndexes(annotation);
+	}
+	
+	private void roundTrip(Tokens tokens, AnnotationHandler handler) throws IOException, TreeTaggerException, InterruptedException, TimeoutException {
+		this.supervisor.roundTrip(this.ttProcessPool.borrow(this.model, this.ttOptions, this.backend, this.ttProbabilityThreshold, this.poolSize, this.poolBorrowTimeout), tokens, handler, this.adapter);
+	}
+	
+	/*
+	 * copy is needed when the tokens are iterated from another thread than
+	 * the one writing to the CAS
+	 */
+	private Tokens createTokens(List<Segment> segments, boolean copy) throws IOException {
+		return new Tokens(segments, this.tokenType, this.model.getEncoding(), copy || !(this.updateAnnotationFeatures || this.isBulk()), this.adapter, this.preTagger, this.tokenCache);
+	}
+	
+	/*
+	 * Applies the failure policy to tokens that could not be tagged,
+	 * false unless it fails
+	 */
+	private boolean fail(Tokens tokens, int documents, Exception failure) throws AnalysisEngineProcessException {
+		this.supervisor.fail(tokens, failure, this.handler, this.isBulk());
+		this.skipped(documents);
+		return false;
+	}
+	
+	private void skipped(int documents) {
+		if (documents > 0) {
+			this.metrics.skipped(documents);
+			this.documentsSkipped += documents;
 		}
-
 	}
 	
-	private class Adapter implements TokenAdapter<Annotation> {
-
-		@Override
-		public String getText(Annotation annotation) {
-			synchronized (annotation.getCAS()) {
-				return annotation.getCoveredText().toLowerCase();		
+	@Override
+	public void destroy() {
+		if (this.workers != null) {
+			this.workers.shutdown();
+		}
+		if (this.pipeline != null) {
+			this.pipeline.shutdown();
+		}
+		if (this.supervisor != null) {
+			this.supervisor.shutdown();
+		}
+		this.coolAll();
+		if (this.watchParameterFile) {
+			this.ttParameter.unwatch();
+		}
+		if (this.documentCache != null) {
+			try {
+				this.documentCache.close();
+			} catch (IOException e) {
+				this.getContext().getLogger().log(Level.WARNING, "Cannot close " + this.documentCacheDirectory + ": " + e.getMessage());
 			}
 		}
+		if (this.output != null) {
+			// shared with the annotators writing to the same file
+			try {
+				this.output.close();
+			} catch (IOException e) {
+				this.getContext().getLogger().log(Level.WARNING, "Cannot write " + this.outputFile + ": " + e.getMessage());
+			}
+		}
+		if (this.acquiredStatistics) {
+			this.acquiredStatistics = false;
+			((TreeTaggerStatistics) this.metrics).release();
+		}
+		super.destroy();
+	}
+	
+	@Override
+	public void collectionProcessComplete() throws AnalysisEngineProcessException {
+		super.collectionProcessComplete();
+		if (this.tokenCache != null) {
+			this.getContext().getLogger().log(Level.INFO, "Token cache: " + this.tokenCache.getHits() + " hits, " + this.tokenCache.getMisses() + " misses");
+		}
+		if (this.documentCache != null) {
+			this.getContext().getLogger().log(Level.INFO, "Document cache: " + this.documentCache.getHits() + " hits, " + this.documentCache.getMisses() + " misses");
+		}
+		if (this.output != null) {
+			try {
+				this.output.flush();
+			} catch (IOException e) {
+				throw new AnalysisEngineProcessException(e);
+			}
+		}
+		if (this.preTagger != null) {
+			for (Map.Entry<String, Long> count : this.preTagger.getCounts().entrySet()) {
+				this.getContext().getLogger().log(Level.INFO, "Pre-tagged by " + count.getKey() + ": " + count.getValue() + " tokens");
+			}
+		}
+	}
+	
+	/*
+	 * null when the token cache is disabled
+	 */
+	public TokenCache getTokenCache() {
+		return this.tokenCache;
+	}
+	
+	/*
+	 * null when no pre-tagging rule or lexicon is configured
+	 */
+	public PreTagger getPreTagger() {
+		return this.preTagger;
+	}
+	
+	public int getBatchSize() {
+		return this.batchSize;
+	}
+	
+	/*
+	 * CASes a TreeTaggerBatcher gathers before flushing: a batch, and the
+	 * batches tagged ahead of it when pipelining
+	 */
+	public int getFlushSize() {
+		return this.batchSize * (this.pipelineWindow + 1);
+	}
+	
+	AnnotationHandler getHandler() {
+		return this.handler;
+	}
+	
+	AnnotationAdapter getAdapter() {
+		return this.adapter;
+	}
+	
+	/*
+	 * The chunks of a document, each tagged by a worker, tagged is false 
+	 * once a chunk was left untagged
+	 */
+	private class Chunks implements Pipeline.Stages<Segment, Results> {
+		
+		private boolean tagged = true;
+		
+		@Override
+		public Callable<Results> open(Segment chunk) throws AnalysisEngineProcessException {
+			return tag(Collections.singletonList(chunk));
+		}
+		
+		@Override
+		public void close(Segment chunk, Results results) throws AnalysisEngineProcessException {
+			this.tagged &= writeResults(results, 0);
+		}
+		
+	}
+	
+	/*
+	 * A batch in the pipeline, and its documents missing from the document
+	 * cache
+	 */
+	private static class Stage {
+		
+		private final List<JCas> batch;
+		private final List<JCas> misses = new ArrayList<JCas>();
+		private final List<byte[]> keys = new ArrayList<byte[]>();
+		
+		public Stage(List<JCas> batch) {
+			this.batch = batch;
+		}
 		
 	}
 	
@@ -0,0 +1,121 @@
+package fr.univnantes.lina.uima.models;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The command line options of a TreeTagger process, validated.
+ *
+ * tt4j reads the output of -token -lemma under -sgml, so these options
+ * are always given. Options changing that output format, or set through
+ * tt4j itself such as -prob, are rejected, as well as unknown options and
+ * options with a value given twice. Repeated flags are kept once.
+ */
+public class TreeTaggerOptions {
+
+	public static final String DEFAULT = "-quiet -no-unknown -sgml -token -lemma";
+
+	private static final List<String> REQUIRED = Arrays.asList("-sgml", "-token", "-lemma");
+
+	private static final Set<String> FLAGS = new HashSet<String>(Arrays.asList(
+			"-quiet", "-no-unknown", "-cap-heuristics", "-hyphen-heuristics", "-pt-with-lemma",
+			"-sgml", "-token", "-lemma"));
+
+	private static final Set<String> NUMBERS = new HashSet<String>(Arrays.asList("-eps", "-beam"));
+
+	private static final Set<String> FILES = new HashSet<String>(Arrays.asList("-lex", "-wc"));
+
+	private static final Set<String> RESERVED = new HashSet<String>(Arrays.asList(
+			"-prob", "-threshold", "-pt-with-prob", "-proto", "-print-prob-tree", "-base"));
+
+	private final List<String> arguments;
+
+	private TreeTaggerOptions(List<String> arguments) {
+		this.arguments = arguments;
+	}
+
+	/*
+	 * Space separated options, as in the TreeTaggerArguments parameter
+	 */
+	public static TreeTaggerOptions parse(String options) {
+		List<String> arguments = new ArrayList<String>();
+		String[] tokens = options == null ? new String[0] : options.trim().split(" +");
+		for (int i = 0; i < tokens.length; i++) {
+			String option = tokens[i];
+			if (option.isEmpty()) {
+				continue;
+			}
+			if (RESERVED.contains(option)) {
+				throw new IllegalArgumentException("TreeTagger option " + option + " changes the output tt4j reads");
+			} else if (FLAGS.contains(option)) {
+				if (!arguments.contains(option)) {
+					arguments.add(option);
+				}
+			} else if (NUMBERS.contains(option) || FILES.contains(option)) {
+				if (arguments.contains(option)) {
+					throw new IllegalArgumentException("TreeTagger option " + option + " is given twice");
+				}
+				if (i + 1 == tokens.length) {
+					throw new IllegalArgumentException("TreeTagger option " + option + " needs a value");
+				}
+				String value = tokens[++i];
+				if (NUMBERS.contains(option)) {
+					try {
+						Double.parseDouble(value);
+					} catch (NumberFormatException e) {
+						throw new IllegalArgumentException("TreeTagger option " + option + " needs a number, not " + value);
+					}
+				} else if (!new File(value).isFile()) {
+					throw new IllegalArgumentException("TreeTagger option " + option + ": " + value + " does not exist");
+				}
+				arguments.add(option);
+				arguments.add(value);
+			} else {
+				throw new IllegalArgumentException("Unknown TreeTagger option " + option);
+			}
+		}
+		for (String option : REQUIRED) {
+			if (!arguments.contains(option)) {
+				arguments.add(option);
+			}
+		}
+		return new TreeTaggerOptions(Collections.unmodifiableList(arguments));
+	}
+
+	public boolean has(String option) {
+		return this.arguments.contains(option);
+	}
+
+	/*
+	 * null when the option is not given
+	 */
+	public String getValue(String option) {
+		int index = this.arguments.indexOf(option);
+		return index < 0 || !(NUMBERS.contains(option) || FILES.contains(option)) ? null : this.arguments.get(index + 1);
+	}
+
+	public String[] toArray() {
+		return this.arguments.toArray(new String[this.arguments.size()]);
+	}
+
+	/*
+	 * Space separated, equal for equal option sets given in the same order
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (String argument : this.arguments) {
+			if (builder.length() > 0) {
+				builder.append(' ');
+			}
+			builder.append(argument);
+		}
+		return builder.toString();
+	}
+
+}
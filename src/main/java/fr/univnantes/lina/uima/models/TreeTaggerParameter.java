@@ -1,9 +1,25 @@
 package fr.univnantes.lina.uima.models;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.uima.UIMAFramework;
 import org.apache.uima.resource.DataResource;
@@ -11,40 +27,277 @@ import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.resource.SharedResourceObject;
 import org.apache.uima.util.Level;
 
+/**
+ * The TreeTagger model, read from a properties XML file giving its file
+ * and encoding. The file may also give one model per language, as
+ * &lt;language&gt;.file and &lt;language&gt;.encoding properties, the
+ * encoding defaulting to the one of the default model.
+ *
+ * The lexicons of the lexicon lookup tagger are given apart, as lexicon
+ * and &lt;language&gt;.lexicon properties, so that a model file is always
+ * a TreeTagger model.
+ *
+ * The model is an immutable {@link Model} swapped atomically on reload,
+ * so that annotators sharing this resource can take a snapshot of it for
+ * each document while another thread reloads it.
+ */
 public class TreeTaggerParameter implements SharedResourceObject {
 
 	public static final String KEY_TT_PARAMETER = "TreeTaggerParameter";
-	
-	private String file;
-	private String encoding;
-	
-	
+
+	private final AtomicReference<Model> model = new AtomicReference<Model>();
+	private volatile URI source;
+	private Properties properties;
+	private Thread watcher;
+	private int watchers;
+
 	public String getModel() throws IOException {
-		return this.file + ":" + this.encoding;
+		return this.model.get().getModel();
+	}
+
+	public String getEncoding() {
+		return this.model.get().getEncoding();
+	}
+
+	/*
+	 * The current model, which does not change once returned
+	 */
+	public Model getDescriptor() {
+		return this.model.get();
+	}
+
+	private static Properties read(InputStream inputStream) throws IOException {
+		try {
+			Properties properties = new Properties();
+			properties.loadFromXML(inputStream);
+			return properties;
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	private synchronized Model doLoad(Properties properties) {
+		Model previous = this.model.get();
+		int version = previous == null ? 0 : previous.version + 1;
+		Model lexicons = load(properties, "lexicon", version, null);
+		Model loaded = load(properties, "file", version, lexicons);
+		this.properties = properties;
+		this.model.set(loaded);
+		return loaded;
 	}
-	
-	private void doLoad(InputStream inputStream) throws IOException {
-		Properties properties = new Properties();
-		properties.loadFromXML(inputStream);
-		this.file = properties.getProperty("file");
-		this.encoding = properties.getProperty("encoding");
+
+	/*
+	 * The default model and the models of the languages, whose files are
+	 * given by the key and <language>.key properties
+	 */
+	private static Model load(Properties properties, String key, int version, Model lexicons) {
+		String encoding = properties.getProperty("encoding");
+		Map<String, Model> languages = new LinkedHashMap<String, Model>();
+		for (String name : properties.stringPropertyNames()) {
+			if (name.endsWith("." + key)) {
+				String prefix = name.substring(0, name.length() - key.length() - 1);
+				String language = prefix.toLowerCase(Locale.ROOT).replace('_', '-');
+				String languageEncoding = properties.getProperty(prefix + ".encoding", encoding);
+				languages.put(language, new Model(language, properties.getProperty(name), languageEncoding, version, Collections.<String, Model>emptyMap(), null));
+			}
+		}
+		return new Model(null, properties.getProperty(key), encoding, version, Collections.unmodifiableMap(languages), lexicons);
 	}
-	
+
 	@Override
 	public void load(DataResource data) throws ResourceInitializationException {
 		try {
-			this.doLoad(data.getInputStream());
+			this.source = data.getUri();
+			this.doLoad(read(data.getInputStream()));
 		} catch (Exception e) {
 			throw new ResourceInitializationException(e);
 		}
 	}
 
+	/*
+	 * Annotators sharing this resource each override it at initialization,
+	 * a file already loaded with the same content keeps its version
+	 */
 	public void override(String parameter) throws IOException {
 		if (parameter != null) {
-			InputStream inputStream = new FileInputStream(parameter);
-			UIMAFramework.getLogger().log(Level.INFO, "Loading " + parameter);
-			this.doLoad(inputStream);			
+			URI source = new File(parameter).toURI();
+			Properties properties = read(new FileInputStream(parameter));
+			synchronized (this) {
+				if (source.equals(this.source) && properties.equals(this.properties)) {
+					return;
+				}
+				UIMAFramework.getLogger().log(Level.INFO, "Loading " + parameter);
+				this.source = source;
+				this.doLoad(properties);
+			}
+		}
+	}
+
+	/*
+	 * Reads the parameter file again. Annotators switch to the new model
+	 * between documents, the processes of the previous one are stopped
+	 * once they are no longer in use.
+	 */
+	public Model reload() throws IOException {
+		if (this.source == null) {
+			throw new IOException("No parameter file to reload");
+		}
+		UIMAFramework.getLogger().log(Level.INFO, "Reloading " + this.source);
+		return this.doLoad(read(this.source.toURL().openStream()));
+	}
+
+	/*
+	 * Reloads the parameter file whenever it changes, when it is a local
+	 * file. Changes to the model file itself need an explicit reload.
+	 * Each call to watch is undone by a call to unwatch, the file being
+	 * watched until the last one.
+	 */
+	public synchronized void watch() throws IOException {
+		this.watchers++;
+		if (this.watcher != null || this.source == null || !"file".equals(this.source.getScheme())) {
+			return;
+		}
+		final Path file = new File(this.source).toPath().toAbsolutePath();
+		final WatchService service = FileSystems.getDefault().newWatchService();
+		file.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		this.watcher = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						WatchKey key = service.take();
+						boolean changed = false;
+						for (WatchEvent<?> event : key.pollEvents()) {
+							changed |= file.getFileName().equals(event.context());
+						}
+						key.reset();
+						if (changed) {
+							// an editor may write the file in several steps
+							Thread.sleep(100);
+							WatchKey pending = service.poll();
+							if (pending != null) {
+								pending.pollEvents();
+								pending.reset();
+							}
+							try {
+								reload();
+							} catch (IOException e) {
+								UIMAFramework.getLogger().log(Level.WARNING, "Cannot reload " + file + ": " + e.getMessage());
+							}
+						}
+					}
+				} catch (InterruptedException e) {
+					// stops watching
+				} finally {
+					try {
+						service.close();
+					} catch (IOException e) {
+						UIMAFramework.getLogger().log(Level.WARNING, "Cannot stop watching " + file + ": " + e.getMessage());
+					}
+				}
+			}
+		}, "TreeTaggerParameter-watcher");
+		this.watcher.setDaemon(true);
+		this.watcher.start();
+	}
+
+	public synchronized void unwatch() {
+		if (this.watchers > 0 && --this.watchers == 0 && this.watcher != null) {
+			this.watcher.interrupt();
+			this.watcher = null;
+		}
+	}
+
+	/**
+	 * A model file and its encoding. The version tells apart successive
+	 * loads of the same file.
+	 *
+	 * The default model, returned by {@link TreeTaggerParameter#getDescriptor()},
+	 * holds the models of the languages, and has no file when there are
+	 * only models for some languages.
+	 */
+	public static class Model {
+
+		private final String language;
+		private final String file;
+		private final String encoding;
+		private final int version;
+		private final Map<String, Model> languages;
+		private final Model lexicons;
+
+		private Model(String language, String file, String encoding, int version, Map<String, Model> languages, Model lexicons) {
+			this.language = language;
+			this.file = file;
+			this.encoding = encoding;
+			this.version = version;
+			this.languages = languages;
+			this.lexicons = lexicons;
+		}
+
+		/*
+		 * null for the default model
+		 */
+		public String getLanguage() {
+			return this.language;
+		}
+
+		public String getFile() {
+			return this.file;
+		}
+
+		public String getEncoding() {
+			return this.encoding;
 		}
+
+		public int getVersion() {
+			return this.version;
+		}
+
+		/*
+		 * The lexicons of the lexicon lookup tagger, loaded along with the
+		 * default model, as models whose files are lexicons
+		 */
+		public Model getLexicons() {
+			return this.lexicons;
+		}
+
+		/*
+		 * As expected by tt4j
+		 */
+		public String getModel() {
+			return this.file + ":" + this.encoding;
+		}
+
+		/*
+		 * The model of a language such as en or en-US, falling back on the
+		 * language without its region then on the default model
+		 */
+		public Model forLanguage(String language) {
+			if (language == null || this.languages.isEmpty()) {
+				return this;
+			}
+			String key = language.toLowerCase(Locale.ROOT).replace('_', '-');
+			Model model = this.languages.get(key);
+			if (model == null && key.indexOf('-') > 0) {
+				model = this.languages.get(key.substring(0, key.indexOf('-')));
+			}
+			return model == null ? this : model;
+		}
+
+		/*
+		 * The default model, when it has a file, and the models of all the
+		 * languages
+		 */
+		public Collection<Model> getModels() {
+			List<Model> models = new ArrayList<Model>(this.languages.size() + 1);
+			if (this.file != null) {
+				models.add(this);
+			}
+			models.addAll(this.languages.values());
+			return models;
+		}
+
 	}
-			
+
 }
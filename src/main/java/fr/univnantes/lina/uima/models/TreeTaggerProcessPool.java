@@ -0,0 +1,267 @@
+package fr.univnantes.lina.uima.models;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.annolab.tt4j.TreeTaggerWrapper;
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.apache.uima.resource.DataResource;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.SharedResourceObject;
+import org.apache.uima.util.Level;
+
+/**
+ * A bounded pool of warm TreeTagger processes, keyed by model and options.
+ *
+ * When no pool is bound to an annotator, the JVM-wide instance returned by
+ * {@link #getInstance()} is used.
+ */
+public class TreeTaggerProcessPool implements SharedResourceObject {
+
+	public static final String KEY_TT_PROCESS_POOL = "TreeTaggerProcessPool";
+
+	private static final TreeTaggerProcessPool INSTANCE = new TreeTaggerProcessPool();
+
+	public static TreeTaggerProcessPool getInstance() {
+		return INSTANCE;
+	}
+
+	private final ConcurrentMap<String, Slot> slots = new ConcurrentHashMap<String, Slot>();
+	private final ConcurrentMap<TreeTaggerWrapper<Annotation>, Slot> owners = new ConcurrentHashMap<TreeTaggerWrapper<Annotation>, Slot>();
+	private final Map<String, Integer> users = new HashMap<String, Integer>();
+
+	@Override
+	public void load(DataResource data) throws ResourceInitializationException {
+		// nothing to load, processes are spawned on demand
+	}
+
+	/*
+	 * type is a subclass of the tt4j wrapper tagging in another way,
+	 * with a public no-argument constructor. Processes giving
+	 * probabilities, with a non-null probabilityThreshold, are pooled
+	 * apart since changing the threshold restarts a process. The pool of a
+	 * model and options is bounded by the largest size asked for, so that
+	 * no annotator gets fewer processes than it was configured with.
+	 */
+	@SuppressWarnings("rawtypes")
+	public TreeTaggerWrapper<Annotation> borrow(TreeTaggerParameter.Model model, TreeTaggerOptions options, Class<? extends TreeTaggerWrapper> type, Double probabilityThreshold, int size, long timeout) throws IOException, InterruptedException, TimeoutException {
+		return this.borrowSlot(model.getModel(), getKey(model, options, type, probabilityThreshold), options, type, probabilityThreshold, size, timeout);
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static String getKey(TreeTaggerParameter.Model model, TreeTaggerOptions options, Class<? extends TreeTaggerWrapper> type, Double probabilityThreshold) {
+		String key = model.getModel();
+		if (model.getVersion() > 0) {
+			key += "#" + model.getVersion();
+		}
+		key += " " + options;
+		if (probabilityThreshold != null) {
+			key += " -threshold " + probabilityThreshold + " -prob";
+		}
+		if (type != TreeTaggerWrapper.class) {
+			key += " " + type.getName();
+		}
+		return key;
+	}
+
+	@SuppressWarnings("rawtypes")
+	private TreeTaggerWrapper<Annotation> borrowSlot(String model, String key, TreeTaggerOptions options, Class<? extends TreeTaggerWrapper> type, Double probabilityThreshold, int size, long timeout) throws IOException, InterruptedException, TimeoutException {
+		Slot slot;
+		while (true) {
+			slot = this.slots.get(key);
+			if (slot == null) {
+				Slot created = new Slot(key, size);
+				slot = this.slots.putIfAbsent(key, created);
+				if (slot == null) {
+					slot = created;
+				}
+			}
+			slot.grow(size);
+			if (!slot.permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+				throw new TimeoutException("No TreeTagger process available for " + key + " after " + timeout + " ms");
+			}
+			synchronized (slot) {
+				if (!slot.removed) {
+					slot.borrowed++;
+					break;
+				}
+			}
+			// retired meanwhile, its permits no longer bound the processes
+			slot.permits.release();
+		}
+		TreeTaggerWrapper<Annotation> wrapper = slot.idle.poll();
+		if (wrapper == null) {
+			try {
+				wrapper = newInstance(type);
+				wrapper.setArguments(options.toArray());
+				wrapper.setModel(model);
+				if (probabilityThreshold != null) {
+					wrapper.setProbabilityThreshold(probabilityThreshold);
+				}
+			} catch (IOException e) {
+				this.giveBack(slot, null, false);
+				throw e;
+			} catch (RuntimeException e) {
+				this.giveBack(slot, null, false);
+				throw e;
+			}
+			UIMAFramework.getLogger().log(Level.INFO, "Starting TreeTagger process for " + key);
+		}
+		this.owners.put(wrapper, slot);
+		return wrapper;
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static TreeTaggerWrapper<Annotation> newInstance(Class<? extends TreeTaggerWrapper> type) {
+		if (type == TreeTaggerWrapper.class) {
+			return new TreeTaggerWrapper<Annotation>();
+		}
+		try {
+			return type.getDeclaredConstructor().newInstance();
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException(e);
+		} catch (InstantiationException e) {
+			throw new IllegalArgumentException(e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException(e);
+		} catch (InvocationTargetException e) {
+			throw new IllegalArgumentException(e.getCause());
+		}
+	}
+
+	public void release(TreeTaggerWrapper<Annotation> wrapper) {
+		Slot slot = this.owners.remove(wrapper);
+		if (slot != null) {
+			this.giveBack(slot, wrapper, true);
+		}
+	}
+
+	/*
+	 * Kills the process instead of returning it to the pool
+	 */
+	public void invalidate(TreeTaggerWrapper<Annotation> wrapper) {
+		Slot slot = this.owners.remove(wrapper);
+		if (slot == null) {
+			wrapper.destroy();
+		} else {
+			this.giveBack(slot, wrapper, false);
+		}
+	}
+
+	private void giveBack(Slot slot, TreeTaggerWrapper<Annotation> wrapper, boolean healthy) {
+		boolean kept;
+		synchronized (slot) {
+			kept = wrapper != null && healthy && !slot.retired;
+			if (kept) {
+				slot.idle.offer(wrapper);
+			}
+			slot.borrowed--;
+			this.removeUnused(slot);
+		}
+		if (wrapper != null && !kept) {
+			wrapper.destroy();
+		}
+		slot.permits.release();
+	}
+
+	/*
+	 * Each annotator keeping a model warm retains it, and retires it when
+	 * it no longer uses it. The processes of a model are stopped once it
+	 * is retired by all the annotators that retained it, the ones in use
+	 * when they are released, so that a model still used elsewhere keeps
+	 * its processes and its bound.
+	 */
+	@SuppressWarnings("rawtypes")
+	public void retain(TreeTaggerParameter.Model model, TreeTaggerOptions options, Class<? extends TreeTaggerWrapper> type, Double probabilityThreshold) {
+		String key = getKey(model, options, type, probabilityThreshold);
+		synchronized (this.users) {
+			Integer users = this.users.get(key);
+			this.users.put(key, users == null ? 1 : users + 1);
+			Slot slot = this.slots.get(key);
+			if (slot != null) {
+				synchronized (slot) {
+					slot.retired = false;
+				}
+			}
+		}
+	}
+
+	/*
+	 * A model nobody retained is retired at once
+	 */
+	@SuppressWarnings("rawtypes")
+	public void retire(TreeTaggerParameter.Model model, TreeTaggerOptions options, Class<? extends TreeTaggerWrapper> type, Double probabilityThreshold) {
+		String key = getKey(model, options, type, probabilityThreshold);
+		List<TreeTaggerWrapper<Annotation>> stopped = new ArrayList<TreeTaggerWrapper<Annotation>>();
+		synchronized (this.users) {
+			Integer users = this.users.get(key);
+			if (users != null && users > 1) {
+				this.users.put(key, users - 1);
+				return;
+			}
+			this.users.remove(key);
+			Slot slot = this.slots.get(key);
+			if (slot != null) {
+				synchronized (slot) {
+					slot.retired = true;
+					slot.idle.drainTo(stopped);
+					this.removeUnused(slot);
+				}
+			}
+		}
+		for (TreeTaggerWrapper<Annotation> wrapper : stopped) {
+			wrapper.destroy();
+		}
+	}
+
+	/*
+	 * Called holding the lock of the slot
+	 */
+	private void removeUnused(Slot slot) {
+		if (slot.retired && slot.borrowed == 0 && !slot.removed) {
+			slot.removed = true;
+			this.slots.remove(slot.key, slot);
+		}
+	}
+
+	private static class Slot {
+
+		private final String key;
+		private final Semaphore permits;
+		private final BlockingQueue<TreeTaggerWrapper<Annotation>> idle;
+		/*
+		 * Guarded by the slot
+		 */
+		private boolean retired;
+		private boolean removed;
+		private int borrowed;
+		private int size;
+
+		public Slot(String key, int size) {
+			this.key = key;
+			this.size = size;
+			this.permits = new Semaphore(size, true);
+			this.idle = new LinkedBlockingQueue<TreeTaggerWrapper<Annotation>>();
+		}
+
+		public synchronized void grow(int size) {
+			if (size > this.size) {
+				this.permits.release(size - this.size);
+				this.size = size;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,119 @@
+package fr.univnantes.lina.uima.models;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.uima.resource.DataResource;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.SharedResourceObject;
+
+/**
+ * Dense integer IDs of the tags of a tagset, from 0, so that tags can be
+ * stored in int features and compared as integers.
+ *
+ * The tags of the data resource, one per line, or of the model get the
+ * IDs in order. A tagset is fixed once loaded: tags missing from it are
+ * rejected rather than given IDs that would depend on the order they are
+ * first seen in.
+ *
+ * Lemmata get no IDs: they are an open class, TreeTagger lemmatizes the
+ * words missing from the lexicon of a model to their own form or to
+ * &lt;unknown&gt;, so no closed list gives them stable IDs.
+ */
+public class TreeTaggerTagset implements SharedResourceObject {
+
+	public static final String KEY_TT_TAGSET = "TreeTaggerTagset";
+
+	/*
+	 * The ID of a missing tag
+	 */
+	public static final int NO_TAG = -1;
+
+	private final Map<String, Integer> ids = new HashMap<String, Integer>();
+	private String[] tags = new String[0];
+
+	/*
+	 * Loaded as a resource
+	 */
+	public TreeTaggerTagset() {
+	}
+
+	public TreeTaggerTagset(Collection<String> tags) {
+		this.addAll(tags);
+	}
+
+	@Override
+	public void load(DataResource data) throws ResourceInitializationException {
+		List<String> tags = new ArrayList<String>();
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(data.getInputStream(), "UTF-8"));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					line = line.trim();
+					if (!line.isEmpty()) {
+						tags.add(line);
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			throw new ResourceInitializationException(e);
+		}
+		this.addAll(tags);
+	}
+
+	private void addAll(Collection<String> tags) {
+		List<String> all = new ArrayList<String>(tags.size());
+		for (String tag : tags) {
+			if (!this.ids.containsKey(tag)) {
+				this.ids.put(tag, all.size());
+				all.add(tag);
+			}
+		}
+		this.tags = all.toArray(new String[all.size()]);
+	}
+
+	public boolean contains(String tag) {
+		return this.ids.containsKey(tag);
+	}
+
+	/*
+	 * NO_TAG for null
+	 */
+	public int getId(String tag) {
+		if (tag == null) {
+			return NO_TAG;
+		}
+		Integer id = this.ids.get(tag);
+		if (id == null) {
+			throw new IllegalArgumentException("Tag " + tag + " is not in the tagset");
+		}
+		return id;
+	}
+
+	/*
+	 * null for NO_TAG
+	 */
+	public String getTag(int id) {
+		return id == NO_TAG ? null : this.tags[id];
+	}
+
+	public int size() {
+		return this.tags.length;
+	}
+
+	public List<String> getTags() {
+		return Collections.unmodifiableList(Arrays.asList(this.tags));
+	}
+
+}
@@ -0,0 +1,74 @@
+package fr.univnantes.ttw.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.jcas.JCas;
+import org.junit.Test;
+
+import fr.univnantes.lina.uima.engines.TreeTaggerWrapper;
+
+public class BulkCreationSpec {
+
+	private static final String TEXT = "the cat is on a mat .";
+
+	private static JCas tag(AnalysisEngine engine, String text) throws Exception {
+		JCas cas = FakeTreeTagger.createCas(text);
+		try {
+			engine.process(cas);
+		} finally {
+			engine.destroy();
+		}
+		return cas;
+	}
+
+	@Test
+	public void testBulkCreationGivesTheSameAnnotations() throws Exception {
+		JCas expected = tag(FakeTreeTagger.createEngine(false), TEXT);
+		JCas cas = tag(FakeTreeTagger.createEngine(false, TreeTaggerWrapper.PARAM_BULK_ANNOTATION_CREATION, true), TEXT);
+		assertThat(FakeTreeTagger.getValues(cas, FakeTreeTagger.TAG_TYPE))
+				.isEqualTo(FakeTreeTagger.getValues(expected, FakeTreeTagger.TAG_TYPE))
+				.containsExactly("the/DT", "cat/NN", "is/VBZ", "on/NN", "a/DT", "mat/NN", "./SENT");
+		assertThat(FakeTreeTagger.getValues(cas, FakeTreeTagger.LEMMA_TYPE))
+				.isEqualTo(FakeTreeTagger.getValues(expected, FakeTreeTagger.LEMMA_TYPE));
+	}
+
+	@Test
+	public void testTagAndLemmaOfTheSameTypeShareAnAnnotation() throws Exception {
+		String tag = FakeTreeTagger.WORD_TYPE + ":tag";
+		String lemma = FakeTreeTagger.WORD_TYPE + ":lemma";
+		JCas separate = tag(FakeTreeTagger.createEngine(tag, lemma, false), TEXT);
+		assertThat(FakeTreeTagger.getTagged(separate, FakeTreeTagger.WORD_TYPE)).hasSize(14);
+		JCas cas = tag(FakeTreeTagger.createEngine(tag, lemma, false, TreeTaggerWrapper.PARAM_BULK_ANNOTATION_CREATION, true), TEXT);
+		assertThat(FakeTreeTagger.getTagged(cas, FakeTreeTagger.WORD_TYPE)).containsExactly(
+				"the/DT/the", "cat/NN/xcat", "is/VBZ/be", "on/NN/xon", "a/DT/a", "mat/NN/xmat", "./SENT/.");
+	}
+
+	@Test
+	public void testAnnotationsAreCreatedInTheirOwnDocument() throws Exception {
+		AnalysisEngine engine = FakeTreeTagger.createEngine(false,
+				TreeTaggerWrapper.PARAM_BULK_ANNOTATION_CREATION, true,
+				TreeTaggerWrapper.PARAM_BATCH_SIZE, 2);
+		JCas first = FakeTreeTagger.createCas("the cat");
+		JCas second = FakeTreeTagger.createCas("is 42 .");
+		try {
+			FakeTreeTagger.getAnnotator(engine).process(Arrays.asList(first, second));
+		} finally {
+			engine.destroy();
+		}
+		assertThat(FakeTreeTagger.getValues(first, FakeTreeTagger.TAG_TYPE)).containsExactly("the/DT", "cat/NN");
+		assertThat(FakeTreeTagger.getValues(second, FakeTreeTagger.TAG_TYPE)).containsExactly("is/VBZ", "42/CD", "./SENT");
+		assertThat(FakeTreeTagger.getValues(second, FakeTreeTagger.LEMMA_TYPE)).containsExactly("is/be", "42/@card@", "./.");
+	}
+
+	@Test
+	public void testUpdatedTokensIgnoreBulkCreation() throws Exception {
+		JCas cas = tag(FakeTreeTagger.createEngine(true, TreeTaggerWrapper.PARAM_BULK_ANNOTATION_CREATION, true), TEXT);
+		assertThat(FakeTreeTagger.getTokens(cas)).containsExactly(
+				"the/DT/the", "cat/NN/xcat", "is/VBZ/be", "on/NN/xon", "a/DT/a", "mat/NN/xmat", "./SENT/.");
+		assertThat(FakeTreeTagger.getValues(cas, FakeTreeTagger.TAG_TYPE)).isEmpty();
+	}
+
+}
@@ -0,0 +1,94 @@
+package fr.univnantes.ttw.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.jcas.JCas;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.univnantes.lina.uima.engines.TreeTaggerStatistics;
+import fr.univnantes.lina.uima.engines.TreeTaggerWrapper;
+
+public class ChunkingSpec {
+
+	AnalysisEngine whole;
+	AnalysisEngine chunked;
+	AnalysisEngine bySentence;
+
+	@Before
+	public void setUp() throws Exception {
+		whole = FakeTreeTagger.createEngine(true);
+		chunked = FakeTreeTagger.createEngine(true, TreeTaggerWrapper.PARAM_MAX_CHUNK_SIZE, 5);
+		bySentence = FakeTreeTagger.createEngine(true,
+				TreeTaggerWrapper.PARAM_MAX_CHUNK_SIZE, 5,
+				TreeTaggerWrapper.PARAM_SENTENCE_TYPE, FakeTreeTagger.SENTENCE_TYPE);
+		TreeTaggerStatistics.getInstance().reset();
+	}
+
+	@After
+	public void tearDown() {
+		whole.destroy();
+		chunked.destroy();
+		bySentence.destroy();
+	}
+
+	private static JCas sentences() throws Exception {
+		// three sentences of three tokens
+		JCas cas = FakeTreeTagger.createCas("the cat sleeps . a dog . this mat .");
+		FakeTreeTagger.annotate(cas, FakeTreeTagger.SENTENCE_TYPE, 0, 16);
+		FakeTreeTagger.annotate(cas, FakeTreeTagger.SENTENCE_TYPE, 17, 24);
+		FakeTreeTagger.annotate(cas, FakeTreeTagger.SENTENCE_TYPE, 25, 35);
+		return cas;
+	}
+
+	@Test
+	public void testChunksAreTaggedLikeTheWholeDocument() throws Exception {
+		JCas expected = FakeTreeTagger.createCas();
+		FakeTreeTagger.fill(expected, 23);
+		whole.process(expected);
+		JCas cas = FakeTreeTagger.createCas();
+		FakeTreeTagger.fill(cas, 23);
+		TreeTaggerStatistics.getInstance().reset();
+		chunked.process(cas);
+		assertThat(FakeTreeTagger.getTokens(cas)).isEqualTo(FakeTreeTagger.getTokens(expected));
+		assertThat(FakeTreeTagger.getRoundTrips()).isEqualTo(5);
+	}
+
+	@Test
+	public void testSmallDocumentsAreNotChunked() throws Exception {
+		JCas cas = FakeTreeTagger.createCas("the cat is on 42");
+		chunked.process(cas);
+		assertThat(FakeTreeTagger.getTokens(cas)).containsExactly(
+				"the/DT/the", "cat/NN/xcat", "is/VBZ/be", "on/NN/xon", "42/CD/@card@");
+		assertThat(FakeTreeTagger.getRoundTrips()).isEqualTo(1);
+	}
+
+	@Test
+	public void testChunksAreCutAtSentenceBoundaries() throws Exception {
+		JCas cas = sentences();
+		bySentence.process(cas);
+		assertThat(FakeTreeTagger.getTokens(cas)).containsExactly(
+				"the/DT/the", "cat/NN/xcat", "sleeps/NN/xsleeps", "./SENT/.",
+				"a/DT/a", "dog/NN/xdog", "./SENT/.",
+				"this/DT/this", "mat/NN/xmat", "./SENT/.");
+		assertThat(FakeTreeTagger.getRoundTrips()).isEqualTo(3);
+	}
+
+	@Test
+	public void testChunksIgnoreSentencesWithoutSentenceType() throws Exception {
+		chunked.process(sentences());
+		assertThat(FakeTreeTagger.getRoundTrips()).isEqualTo(2);
+	}
+
+	@Test
+	public void testLongSentencesAreCutAnyway() throws Exception {
+		JCas cas = FakeTreeTagger.createCas("the cat is on a mat under this table with a dog .");
+		FakeTreeTagger.annotate(cas, FakeTreeTagger.SENTENCE_TYPE, 0, cas.getDocumentText().length());
+		bySentence.process(cas);
+		assertThat(FakeTreeTagger.getTokens(cas)).hasSize(13).endsWith("./SENT/.");
+		assertThat(FakeTreeTagger.getRoundTrips()).isEqualTo(3);
+	}
+
+}
@@ -0,0 +1,125 @@
+package fr.univnantes.ttw.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fr.univnantes.lina.uima.engines.DocumentCache;
+
+public class DocumentCacheSpec {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	File directory;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = folder.newFolder("cache");
+	}
+
+	private static byte[] key(int i) {
+		byte[] key = new byte[16];
+		key[0] = (byte) i;
+		key[15] = (byte) (i >> 8);
+		return key;
+	}
+
+	private static DocumentCache.Entry entry(String tag) {
+		return new DocumentCache.Entry(4, new int[] { 0, 2, 3 }, new String[] { "DT", tag, "SENT" }, new String[] { "the", "\u00e9t\u00e9", "." });
+	}
+
+	@Test
+	public void testEntriesAreReadBack() throws Exception {
+		DocumentCache cache = DocumentCache.open(directory, 1 << 20);
+		try {
+			cache.put(key(1), entry("NN"));
+			DocumentCache.Entry entry = cache.get(key(1));
+			assertThat(entry.getTokens()).isEqualTo(4);
+			assertThat(entry.size()).isEqualTo(3);
+			assertThat(entry.getPosition(1)).isEqualTo(2);
+			assertThat(entry.getTag(1)).isEqualTo("NN");
+			assertThat(entry.getLemma(1)).isEqualTo("\u00e9t\u00e9");
+			assertThat(cache.get(key(2))).isNull();
+		} finally {
+			cache.close();
+		}
+	}
+
+	@Test
+	public void testEntriesSurviveReopening() throws Exception {
+		DocumentCache cache = DocumentCache.open(directory, 1 << 20);
+		cache.put(key(1), entry("NN"));
+		cache.put(key(2), entry("VB"));
+		cache.close();
+		cache = DocumentCache.open(directory, 1 << 20);
+		try {
+			assertThat(cache.size()).isEqualTo(2);
+			assertThat(cache.get(key(2)).getTag(1)).isEqualTo("VB");
+		} finally {
+			cache.close();
+		}
+	}
+
+	@Test
+	public void testIncompleteLastEntryIsDropped() throws Exception {
+		DocumentCache cache = DocumentCache.open(directory, 1 << 20);
+		cache.put(key(1), entry("NN"));
+		cache.put(key(2), entry("VB"));
+		long size = cache.getFileSize();
+		cache.close();
+		RandomAccessFile file = new RandomAccessFile(new File(directory, DocumentCache.FILE_NAME), "rw");
+		try {
+			file.setLength(size - 3);
+		} finally {
+			file.close();
+		}
+		cache = DocumentCache.open(directory, 1 << 20);
+		try {
+			assertThat(cache.size()).isEqualTo(1);
+			assertThat(cache.get(key(1)).getTag(1)).isEqualTo("NN");
+			assertThat(cache.get(key(2))).isNull();
+		} finally {
+			cache.close();
+		}
+	}
+
+	@Test
+	public void testCompactionKeepsRecentlyUsedEntries() throws Exception {
+		DocumentCache cache = DocumentCache.open(directory, 1000);
+		try {
+			cache.put(key(0), entry("NN"));
+			for (int i = 1; i < 100; i++) {
+				// key 0 stays the most recently used
+				cache.get(key(0));
+				cache.put(key(i), entry("VB"));
+			}
+			assertThat(cache.getFileSize()).isLessThanOrEqualTo(1000);
+			assertThat(cache.size()).isLessThan(100);
+			assertThat(cache.get(key(0)).getTag(1)).isEqualTo("NN");
+			assertThat(cache.get(key(99)).getTag(1)).isEqualTo("VB");
+			assertThat(cache.get(key(1))).isNull();
+		} finally {
+			cache.close();
+		}
+	}
+
+	@Test
+	public void testSharedCacheStaysOpenUntilLastClose() throws Exception {
+		DocumentCache first = DocumentCache.open(directory, 1 << 20);
+		DocumentCache second = DocumentCache.open(directory, 1 << 20);
+		assertThat(second).isSameAs(first);
+		first.put(key(1), entry("NN"));
+		first.close();
+		assertThat(second.get(key(1)).getTag(1)).isEqualTo("NN");
+		second.close();
+		assertThat(DocumentCache.open(directory, 1 << 20)).isNotSameAs(first);
+	}
+
+}
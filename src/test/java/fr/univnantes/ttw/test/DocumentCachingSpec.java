@@ -0,0 +1,120 @@
+package fr.univnantes.ttw.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.jcas.JCas;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fr.univnantes.lina.uima.engines.TreeTaggerStatistics;
+import fr.univnantes.lina.uima.engines.TreeTaggerWrapper;
+
+public class DocumentCachingSpec {
+
+	private static final String TEXT = "the cat is on a mat .";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	File directory;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = folder.newFolder("cache");
+		TreeTaggerStatistics.getInstance().reset();
+	}
+
+	private AnalysisEngine createEngine(Object... parameters) throws Exception {
+		Object[] all = new Object[parameters.length + 2];
+		all[0] = TreeTaggerWrapper.PARAM_DOCUMENT_CACHE_DIRECTORY;
+		all[1] = directory.getPath();
+		System.arraycopy(parameters, 0, all, 2, parameters.length);
+		return FakeTreeTagger.createEngine(true, all);
+	}
+
+	private static JCas tag(AnalysisEngine engine, String text) throws Exception {
+		JCas cas = FakeTreeTagger.createCas(text);
+		engine.process(cas);
+		return cas;
+	}
+
+	@Test
+	public void testCachedDocumentsAreNotSentToTreeTagger() throws Exception {
+		AnalysisEngine engine = createEngine();
+		try {
+			JCas first = tag(engine, TEXT);
+			JCas second = tag(engine, TEXT);
+			assertThat(FakeTreeTagger.getTokens(second)).isEqualTo(FakeTreeTagger.getTokens(first)).containsExactly(
+					"the/DT/the", "cat/NN/xcat", "is/VBZ/be", "on/NN/xon", "a/DT/a", "mat/NN/xmat", "./SENT/.");
+			assertThat(FakeTreeTagger.getRoundTrips()).isEqualTo(1);
+			tag(engine, "a dog is on the mat .");
+			assertThat(FakeTreeTagger.getRoundTrips()).isEqualTo(2);
+		} finally {
+			engine.destroy();
+		}
+	}
+
+	@Test
+	public void testCachedDocumentsOutliveTheEngine() throws Exception {
+		AnalysisEngine engine = createEngine();
+		JCas first = tag(engine, TEXT);
+		engine.destroy();
+		engine = createEngine();
+		try {
+			assertThat(FakeTreeTagger.getTokens(tag(engine, TEXT))).isEqualTo(FakeTreeTagger.getTokens(first));
+			assertThat(FakeTreeTagger.getRoundTrips()).isEqualTo(1);
+		} finally {
+			engine.destroy();
+		}
+	}
+
+	@Test
+	public void testAChangedModelMissesTheCache() throws Exception {
+		AnalysisEngine engine = createEngine();
+		try {
+			tag(engine, TEXT);
+			File model = new File(FakeTreeTagger.getHome(), "models/english.par");
+			model.setLastModified(model.lastModified() + 2000);
+			tag(engine, TEXT);
+			assertThat(FakeTreeTagger.getRoundTrips()).isEqualTo(2);
+		} finally {
+			engine.destroy();
+		}
+	}
+
+	@Test
+	public void testDocumentsCachedWithoutLemmataMissTheCache() throws Exception {
+		AnalysisEngine engine = FakeTreeTagger.createEngine("tag", null, true,
+				TreeTaggerWrapper.PARAM_DOCUMENT_CACHE_DIRECTORY, directory.getPath());
+		try {
+			tag(engine, TEXT);
+		} finally {
+			engine.destroy();
+		}
+		engine = createEngine();
+		try {
+			assertThat(FakeTreeTagger.getTokens(tag(engine, TEXT))).startsWith("the/DT/the", "cat/NN/xcat");
+			assertThat(FakeTreeTagger.getRoundTrips()).isEqualTo(2);
+		} finally {
+			engine.destroy();
+		}
+	}
+
+	@Test
+	public void testChunkedDocumentsAreNotCached() throws Exception {
+		AnalysisEngine engine = createEngine(TreeTaggerWrapper.PARAM_MAX_CHUNK_SIZE, 4);
+		try {
+			tag(engine, TEXT);
+			tag(engine, TEXT);
+			assertThat(FakeTreeTagger.getRoundTrips()).isEqualTo(4);
+		} finally {
+			engine.destroy();
+		}
+	}
+
+}
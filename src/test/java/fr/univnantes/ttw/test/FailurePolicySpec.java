@@ -0,0 +1,108 @@
+package fr.univnantes.ttw.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.JCas;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fr.univnantes.lina.uima.engines.TreeTaggerStatistics;
+import fr.univnantes.lina.uima.engines.TreeTaggerWrapper;
+
+public class FailurePolicySpec {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Before
+	public void setUp() throws Exception {
+		TreeTaggerStatistics.getInstance().reset();
+	}
+
+	private static JCas tag(AnalysisEngine engine, String text) throws Exception {
+		JCas cas = FakeTreeTagger.createCas(text);
+		engine.process(cas);
+		return cas;
+	}
+
+	@Test
+	public void testHungProcessesAreKilledByTheWatchdog() throws Exception {
+		AnalysisEngine engine = FakeTreeTagger.createEngine(true, TreeTaggerWrapper.PARAM_TIMEOUT, 500L);
+		try {
+			long start = System.nanoTime();
+			JCas cas = tag(engine, "the hang cat");
+			assertThat((System.nanoTime() - start) / 1000000).isLessThan(4000);
+			assertThat(FakeTreeTagger.getTokens(cas)).containsExactly("the/null/null", "hang/null/null", "cat/null/null");
+			assertThat(TreeTaggerStatistics.getInstance().getSkippedDocuments()).isEqualTo(1);
+		} finally {
+			engine.destroy();
+		}
+	}
+
+	@Test
+	public void testSkippedDocumentsLeaveTheNextOnesTagged() throws Exception {
+		AnalysisEngine engine = FakeTreeTagger.createEngine(true);
+		try {
+			JCas skipped = tag(engine, "the die");
+			JCas cas = tag(engine, "the cat");
+			assertThat(FakeTreeTagger.getTokens(skipped)).containsExactly("the/null/null", "die/null/null");
+			assertThat(FakeTreeTagger.getTokens(cas)).containsExactly("the/DT/the", "cat/NN/xcat");
+			assertThat(TreeTaggerStatistics.getInstance().getSkippedDocuments()).isEqualTo(1);
+			assertThat(TreeTaggerStatistics.getInstance().getProcessRestarts()).isEqualTo(1);
+		} finally {
+			engine.destroy();
+		}
+	}
+
+	@Test
+	public void testFailPolicyFailsTheDocument() throws Exception {
+		AnalysisEngine engine = FakeTreeTagger.createEngine(true, TreeTaggerWrapper.PARAM_FAILURE_POLICY, "fail");
+		try {
+			tag(engine, "the die");
+			fail("The dead process was not reported");
+		} catch (AnalysisEngineProcessException e) {
+			assertThat(TreeTaggerStatistics.getInstance().getFailedDocuments()).isEqualTo(1);
+		} finally {
+			engine.destroy();
+		}
+	}
+
+	@Test
+	public void testFallbackPolicyTagsWithTheFallbackTag() throws Exception {
+		AnalysisEngine engine = FakeTreeTagger.createEngine(true,
+				TreeTaggerWrapper.PARAM_FAILURE_POLICY, "fallback",
+				TreeTaggerWrapper.PARAM_FALLBACK_TAG, "XX");
+		try {
+			JCas cas = tag(engine, "the die");
+			assertThat(FakeTreeTagger.getTokens(cas)).containsExactly("the/XX/the", "die/XX/die");
+		} finally {
+			engine.destroy();
+		}
+	}
+
+	@Test
+	public void testRetriesRecoverFromATransientFailure() throws Exception {
+		File model = folder.newFile("once.par");
+		File parameterFile = FakeTreeTagger.writeParameterFile(folder.newFile("once.xml"), "file", model.getPath(), "encoding", "utf-8");
+		AnalysisEngine engine = FakeTreeTagger.createEngine(parameterFile, true,
+				TreeTaggerWrapper.PARAM_MAX_RETRIES, 1,
+				TreeTaggerWrapper.PARAM_RETRY_BACKOFF, 10L);
+		try {
+			JCas cas = tag(engine, "the once");
+			assertThat(FakeTreeTagger.getTokens(cas)).containsExactly("the/DT/the", "once/NN/xonce");
+			assertThat(new File(model.getPath() + ".once")).exists();
+			assertThat(TreeTaggerStatistics.getInstance().getSkippedDocuments()).isEqualTo(0);
+			assertThat(TreeTaggerStatistics.getInstance().getProcessRestarts()).isEqualTo(1);
+		} finally {
+			engine.destroy();
+		}
+	}
+
+}
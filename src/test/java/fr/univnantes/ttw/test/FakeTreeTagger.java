@@ -0,0 +1,285 @@
+package fr.univnantes.ttw.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.Type;
+import org.apache.uima.fit.factory.AnalysisEngineFactory;
+import org.apache.uima.fit.factory.ExternalResourceFactory;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.apache.uima.resource.metadata.TypeDescription;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+
+import fr.univnantes.lina.uima.engines.TreeTaggerStatistics;
+import fr.univnantes.lina.uima.engines.TreeTaggerWrapper;
+import fr.univnantes.lina.uima.models.TreeTaggerParameter;
+
+/**
+ * Installs the scripted tree-tagger stand-in in a temporary TreeTagger home
+ * and builds the engines and documents the specs and benchmarks run on.
+ */
+public class FakeTreeTagger {
+
+	public static final String TOKEN_TYPE = "fr.univnantes.ttw.bench.Token";
+	public static final String TAG_TYPE = "fr.univnantes.ttw.bench.Tag";
+	public static final String LEMMA_TYPE = "fr.univnantes.ttw.bench.Lemma";
+	public static final String WORD_TYPE = "fr.univnantes.ttw.bench.Word";
+	public static final String DOCUMENT_TYPE = "fr.univnantes.ttw.bench.Document";
+	public static final String SENTENCE_TYPE = "fr.univnantes.ttw.bench.Sentence";
+	public static final String PARAGRAPH_TYPE = "fr.univnantes.ttw.bench.Paragraph";
+	public static final String TABLE_TYPE = "fr.univnantes.ttw.bench.Table";
+
+	private static final String[] WORDS = { "the", "cat", "is", "on", "a", "mat", "42", "this", "dog", "sleeps", "under", "table", "." };
+
+	private static File home;
+
+	/*
+	 * A TreeTagger home with the stand-in executable and an empty model,
+	 * deleted when the JVM exits
+	 */
+	public static synchronized File getHome() throws IOException {
+		if (home == null) {
+			File directory = File.createTempFile("tree-tagger", "");
+			directory.delete();
+			File bin = new File(directory, "bin");
+			File models = new File(directory, "models");
+			bin.mkdirs();
+			models.mkdirs();
+			File executable = new File(bin, "tree-tagger");
+			copy(FakeTreeTagger.class.getResourceAsStream("fixtures/tree-tagger"), executable);
+			executable.setExecutable(true);
+			new File(models, "english.par").createNewFile();
+			writeParameterFile(new File(directory, "english.xml"), "file", "english.par", "encoding", "utf-8");
+			home = directory;
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+
+				@Override
+				public void run() {
+					delete(home);
+				}
+			});
+		}
+		return home;
+	}
+
+	/*
+	 * An empty model in the models directory, which the stand-in ignores
+	 */
+	public static File createModel(String name) throws IOException {
+		File model = new File(getHome(), "models/" + name);
+		model.createNewFile();
+		return model;
+	}
+
+	/*
+	 * A TreeTaggerParameter file with the given keys and values
+	 */
+	public static File writeParameterFile(File file, String... entries) throws IOException {
+		Properties parameter = new Properties();
+		for (int i = 0; i < entries.length; i += 2) {
+			parameter.setProperty(entries[i], entries[i + 1]);
+		}
+		OutputStream outputStream = new FileOutputStream(file);
+		try {
+			parameter.storeToXML(outputStream, null);
+		} finally {
+			outputStream.close();
+		}
+		return file;
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	private static void copy(InputStream inputStream, File file) throws IOException {
+		OutputStream outputStream = new FileOutputStream(file);
+		try {
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = inputStream.read(buffer)) != -1) {
+				outputStream.write(buffer, 0, read);
+			}
+		} finally {
+			inputStream.close();
+			outputStream.close();
+		}
+	}
+
+	public static TypeSystemDescription getTypeSystem() {
+		TypeSystemDescription typeSystem = UIMAFramework.getResourceSpecifierFactory().createTypeSystemDescription();
+		TypeDescription token = typeSystem.addType(TOKEN_TYPE, "", CAS.TYPE_NAME_ANNOTATION);
+		token.addFeature("tag", "", CAS.TYPE_NAME_STRING);
+		token.addFeature("lemma", "", CAS.TYPE_NAME_STRING);
+		token.addFeature("tags", "", CAS.TYPE_NAME_STRING_ARRAY);
+		token.addFeature("probabilities", "", CAS.TYPE_NAME_FLOAT_ARRAY);
+		typeSystem.addType(TAG_TYPE, "", CAS.TYPE_NAME_ANNOTATION).addFeature("value", "", CAS.TYPE_NAME_STRING);
+		typeSystem.addType(LEMMA_TYPE, "", CAS.TYPE_NAME_ANNOTATION).addFeature("value", "", CAS.TYPE_NAME_STRING);
+		TypeDescription word = typeSystem.addType(WORD_TYPE, "", CAS.TYPE_NAME_ANNOTATION);
+		word.addFeature("tag", "", CAS.TYPE_NAME_STRING);
+		word.addFeature("lemma", "", CAS.TYPE_NAME_STRING);
+		TypeDescription document = typeSystem.addType(DOCUMENT_TYPE, "", CAS.TYPE_NAME_TOP);
+		document.addFeature("probabilities", "", CAS.TYPE_NAME_FLOAT_ARRAY);
+		document.addFeature("language", "", CAS.TYPE_NAME_STRING);
+		typeSystem.addType(SENTENCE_TYPE, "", CAS.TYPE_NAME_ANNOTATION);
+		typeSystem.addType(PARAGRAPH_TYPE, "", CAS.TYPE_NAME_ANNOTATION);
+		typeSystem.addType(TABLE_TYPE, "", CAS.TYPE_NAME_ANNOTATION);
+		return typeSystem;
+	}
+
+	/*
+	 * update selects UpdateAnnotationFeatures mode, otherwise tags and
+	 * lemmata are added as Tag and Lemma annotations
+	 */
+	public static AnalysisEngine createEngine(boolean update, Object... parameters) throws Exception {
+		return createEngine(update ? "tag" : TAG_TYPE + ":value", update ? "lemma" : LEMMA_TYPE + ":value", update, parameters);
+	}
+
+	public static AnalysisEngine createEngine(String tagFeature, String lemmaFeature, boolean update, Object... parameters) throws Exception {
+		return createEngine(new File(getHome(), "english.xml"), tagFeature, lemmaFeature, update, parameters);
+	}
+
+	public static AnalysisEngine createEngine(File parameterFile, boolean update, Object... parameters) throws Exception {
+		return createEngine(parameterFile, update ? "tag" : TAG_TYPE + ":value", update ? "lemma" : LEMMA_TYPE + ":value", update, parameters);
+	}
+
+	private static AnalysisEngine createEngine(File parameterFile, String tagFeature, String lemmaFeature, boolean update, Object... parameters) throws Exception {
+		File home = getHome();
+		List<Object> all = new ArrayList<Object>(Arrays.asList(
+				TreeTaggerWrapper.PARAM_TT_HOME_DIRECTORY, home.getAbsolutePath(),
+				TreeTaggerWrapper.PARAM_ANNOTATION_TYPE, TOKEN_TYPE,
+				TreeTaggerWrapper.PARAM_TAG_FEATURE, tagFeature,
+				TreeTaggerWrapper.PARAM_LEMMA_FEATURE, lemmaFeature,
+				TreeTaggerWrapper.PARAM_UPDATE_ANNOTATION_FEATURES, update));
+		all.addAll(Arrays.asList(parameters));
+		AnalysisEngineDescription description = AnalysisEngineFactory.createEngineDescription(TreeTaggerWrapper.class, getTypeSystem(), all.toArray());
+		ExternalResourceFactory.createDependencyAndBind(description, TreeTaggerParameter.KEY_TT_PARAMETER, TreeTaggerParameter.class, parameterFile.toURI().toString());
+		return AnalysisEngineFactory.createEngine(description);
+	}
+
+	/*
+	 * uimaFIT does not expose the annotator behind an engine
+	 */
+	public static TreeTaggerWrapper getAnnotator(AnalysisEngine engine) throws Exception {
+		Field field = engine.getClass().getDeclaredField("mAnalysisComponent");
+		field.setAccessible(true);
+		return (TreeTaggerWrapper) field.get(engine);
+	}
+
+	public static JCas createCas() throws Exception {
+		return JCasFactory.createJCas(getTypeSystem());
+	}
+
+	/*
+	 * A document whose tokens are separated by single spaces
+	 */
+	public static JCas createCas(String text) throws Exception {
+		JCas cas = createCas();
+		cas.setDocumentText(text);
+		int begin = 0;
+		for (String word : text.split(" ")) {
+			if (!word.isEmpty()) {
+				annotate(cas, TOKEN_TYPE, begin, begin + word.length());
+			}
+			begin += word.length() + 1;
+		}
+		return cas;
+	}
+
+	public static void annotate(JCas cas, String typeName, int begin, int end) {
+		CAS view = cas.getCas();
+		view.addFsToIndexes(view.createAnnotation(cas.getTypeSystem().getType(typeName), begin, end));
+	}
+
+	/*
+	 * The tokens of the CAS as word/tag/lemma, as written in 
+	 * UpdateAnnotationFeatures mode
+	 */
+	public static List<String> getTokens(JCas cas) {
+		return getTagged(cas, TOKEN_TYPE);
+	}
+
+	/*
+	 * The annotations of a type with tag and lemma features, as 
+	 * word/tag/lemma
+	 */
+	public static List<String> getTagged(JCas cas, String typeName) {
+		Type type = cas.getTypeSystem().getType(typeName);
+		Feature tag = type.getFeatureByBaseName("tag");
+		Feature lemma = type.getFeatureByBaseName("lemma");
+		List<String> tokens = new ArrayList<String>();
+		for (Annotation token : cas.getAnnotationIndex(type)) {
+			tokens.add(token.getCoveredText() + "/" + token.getStringValue(tag) + "/" + token.getStringValue(lemma));
+		}
+		return tokens;
+	}
+
+	/*
+	 * The Tag or Lemma annotations of the CAS as word/value
+	 */
+	public static List<String> getValues(JCas cas, String typeName) {
+		Type type = cas.getTypeSystem().getType(typeName);
+		Feature value = type.getFeatureByBaseName("value");
+		List<String> values = new ArrayList<String>();
+		for (Annotation annotation : cas.getAnnotationIndex(type)) {
+			values.add(annotation.getCoveredText() + "/" + annotation.getStringValue(value));
+		}
+		return values;
+	}
+
+	/*
+	 * Round-trips to TreeTagger processes recorded by the JVM-wide 
+	 * statistics since their last reset
+	 */
+	public static long getRoundTrips() {
+		long roundTrips = 0;
+		for (long count : TreeTaggerStatistics.getInstance().getTaggerLatencyHistogram()) {
+			roundTrips += count;
+		}
+		return roundTrips;
+	}
+
+	/*
+	 * Fills the CAS with a synthetic document of the given number of tokens
+	 */
+	public static void fill(JCas cas, int size) {
+		cas.reset();
+		StringBuilder text = new StringBuilder(size * 5);
+		int[] offsets = new int[size * 2];
+		for (int i = 0; i < size; i++) {
+			String word = WORDS[(i * 7 + i / WORDS.length) % WORDS.length];
+			offsets[i * 2] = text.length();
+			text.append(word);
+			offsets[i * 2 + 1] = text.length();
+			text.append(' ');
+		}
+		cas.setDocumentText(text.toString());
+		Type type = cas.getTypeSystem().getType(TOKEN_TYPE);
+		CAS view = cas.getCas();
+		for (int i = 0; i < size; i++) {
+			view.addFsToIndexes(view.createAnnotation(type, offsets[i * 2], offsets[i * 2 + 1]));
+		}
+	}
+
+}
@@ -0,0 +1,143 @@
+package fr.univnantes.ttw.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.cas.Type;
+import org.apache.uima.jcas.JCas;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fr.univnantes.lina.uima.engines.TreeTaggerStatistics;
+import fr.univnantes.lina.uima.engines.TreeTaggerWrapper;
+
+public class LanguageRoutingSpec {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	File parameterFile;
+
+	@Before
+	public void setUp() throws Exception {
+		parameterFile = FakeTreeTagger.writeParameterFile(folder.newFile("models.xml"),
+				"file", model("english.par"),
+				"fr.file", model("french.par"),
+				"de.file", model("german.par"),
+				"encoding", "utf-8");
+		TreeTaggerStatistics.getInstance().reset();
+	}
+
+	private String model(String name) throws Exception {
+		return folder.newFile(name).getPath();
+	}
+
+	private static JCas createCas(String language) throws Exception {
+		JCas cas = FakeTreeTagger.createCas("the model");
+		cas.setDocumentLanguage(language);
+		return cas;
+	}
+
+	private static String getModel(JCas cas) {
+		String token = FakeTreeTagger.getTokens(cas).get(1);
+		return token.substring(token.lastIndexOf('/') + 1);
+	}
+
+	@Test
+	public void testDocumentLanguagePicksTheModel() throws Exception {
+		AnalysisEngine engine = FakeTreeTagger.createEngine(parameterFile, true);
+		try {
+			for (String[] expected : new String[][] {
+					{ "fr", "french.par" }, { "de", "german.par" }, { "fr-CA", "french.par" },
+					{ "en", "english.par" }, { "x-unspecified", "english.par" } }) {
+				JCas cas = createCas(expected[0]);
+				engine.process(cas);
+				assertThat(getModel(cas)).as(expected[0]).isEqualTo(expected[1]);
+			}
+		} finally {
+			engine.destroy();
+		}
+	}
+
+	@Test
+	public void testLanguageFeatureOverridesTheDocumentLanguage() throws Exception {
+		AnalysisEngine engine = FakeTreeTagger.createEngine(parameterFile, true,
+				TreeTaggerWrapper.PARAM_LANGUAGE_FEATURE, FakeTreeTagger.DOCUMENT_TYPE + ":language");
+		try {
+			JCas cas = createCas("fr");
+			Type type = cas.getTypeSystem().getType(FakeTreeTagger.DOCUMENT_TYPE);
+			FeatureStructure document = cas.getCas().createFS(type);
+			document.setStringValue(type.getFeatureByBaseName("language"), "de");
+			cas.getCas().addFsToIndexes(document);
+			engine.process(cas);
+			assertThat(getModel(cas)).isEqualTo("german.par");
+			cas = createCas("fr");
+			engine.process(cas);
+			assertThat(getModel(cas)).isEqualTo("french.par");
+		} finally {
+			engine.destroy();
+		}
+	}
+
+	@Test
+	public void testBatchesAreGroupedByModel() throws Exception {
+		AnalysisEngine engine = FakeTreeTagger.createEngine(parameterFile, true, TreeTaggerWrapper.PARAM_BATCH_SIZE, 4);
+		try {
+			JCas english = createCas("en");
+			JCas french = createCas("fr");
+			JCas other = createCas("en");
+			FakeTreeTagger.getAnnotator(engine).process(Arrays.asList(english, french, other));
+			assertThat(getModel(english)).isEqualTo("english.par");
+			assertThat(getModel(french)).isEqualTo("french.par");
+			assertThat(getModel(other)).isEqualTo("english.par");
+			assertThat(FakeTreeTagger.getRoundTrips()).isEqualTo(2);
+			assertThat(TreeTaggerStatistics.getInstance().getModelSwitches()).isEqualTo(1);
+		} finally {
+			engine.destroy();
+		}
+	}
+
+	@Test
+	public void testLeastRecentlyUsedModelsAreEvicted() throws Exception {
+		AnalysisEngine engine = FakeTreeTagger.createEngine(parameterFile, true, TreeTaggerWrapper.PARAM_WARM_MODELS, 2);
+		try {
+			for (String language : new String[] { "fr", "en", "de", "en", "fr" }) {
+				JCas cas = createCas(language);
+				engine.process(cas);
+			}
+			assertThat(TreeTaggerStatistics.getInstance().getModelSwitches()).isEqualTo(5);
+			// german then french each push out the model used least recently
+			assertThat(TreeTaggerStatistics.getInstance().getModelEvictions()).isEqualTo(2);
+		} finally {
+			engine.destroy();
+		}
+	}
+
+	@Test
+	public void testLanguagesWithoutAModelFail() throws Exception {
+		File parameterFile = FakeTreeTagger.writeParameterFile(folder.newFile("french.xml"),
+				"fr.file", model("only.par"),
+				"encoding", "utf-8");
+		AnalysisEngine engine = FakeTreeTagger.createEngine(parameterFile, true);
+		try {
+			JCas cas = createCas("fr");
+			engine.process(cas);
+			assertThat(getModel(cas)).isEqualTo("only.par");
+			engine.process(createCas("de"));
+			fail("A document without a model was tagged");
+		} catch (AnalysisEngineProcessException e) {
+			assertThat(e.getCause()).hasMessageContaining("de");
+		} finally {
+			engine.destroy();
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+package fr.univnantes.ttw.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.annolab.tt4j.TokenHandler;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fr.univnantes.lina.uima.engines.LexiconLookupTagger;
+import fr.univnantes.lina.uima.engines.TreeTaggerWrapper;
+
+public class LexiconLookupTaggerSpec {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	File lexicon;
+	LexiconLookupTagger<String> tagger;
+	List<String> results;
+
+	@Before
+	public void setUp() throws Exception {
+		lexicon = folder.newFile("english.lex");
+		Writer writer = new OutputStreamWriter(new FileOutputStream(lexicon), "UTF-8");
+		try {
+			writer.write("the\tDT the\ncats\tNNS cat\tVBZ cat\nwalking\tVBG walk\ntalking\tVBG talk\nis\tVBZ be\n");
+		} finally {
+			writer.close();
+		}
+		results = new ArrayList<String>();
+		tagger = new LexiconLookupTagger<String>();
+		tagger.setModel(lexicon.getAbsolutePath() + ":UTF-8");
+		tagger.setHandler(new TokenHandler<String>() {
+
+			@Override
+			public void token(String token, String tag, String lemma) {
+				results.add(token + "/" + tag + "/" + lemma);
+			}
+		});
+	}
+
+	@Test
+	public void testKnownWordsGetTheirFirstAnalysis() throws Exception {
+		tagger.process(Arrays.asList("the", "cats", "is"));
+		assertThat(results).containsExactly("the/DT/the", "cats/NNS/cat", "is/VBZ/be");
+	}
+
+	@Test
+	public void testCapitalizedWordsAreLookedUpLowercased() throws Exception {
+		tagger.process(Arrays.asList("The"));
+		assertThat(results).containsExactly("The/DT/the");
+	}
+
+	@Test
+	public void testUnknownWordsAreGuessedFromTheirSuffix() throws Exception {
+		tagger.process(Arrays.asList("barking"));
+		assertThat(results).containsExactly("barking/VBG/null");
+	}
+
+	@Test
+	public void testLookupBackendReadsTheLexiconOfTheParameterFile() throws Exception {
+		File parameterFile = FakeTreeTagger.writeParameterFile(folder.newFile("english.xml"),
+				"file", new File(FakeTreeTagger.getHome(), "models/english.par").getPath(),
+				"lexicon", lexicon.getPath(),
+				"encoding", "utf-8");
+		AnalysisEngine engine = FakeTreeTagger.createEngine(parameterFile, true, TreeTaggerWrapper.PARAM_BACKEND, "lookup");
+		try {
+			JCas cas = FakeTreeTagger.createCas("the cats is barking");
+			engine.process(cas);
+			assertThat(FakeTreeTagger.getTokens(cas)).containsExactly("the/DT/the", "cats/NNS/cat", "is/VBZ/be", "barking/VBG/barking");
+		} finally {
+			engine.destroy();
+		}
+	}
+
+	@Test
+	public void testLookupBackendNeedsALexicon() throws Exception {
+		try {
+			FakeTreeTagger.createEngine(true, TreeTaggerWrapper.PARAM_BACKEND, "lookup");
+			fail("The model was read as a lexicon");
+		} catch (ResourceInitializationException e) {
+			assertThat(e.getCause().getCause()).hasMessageContaining("No lexicon");
+		}
+	}
+
+}
@@ -0,0 +1,83 @@
+package fr.univnantes.ttw.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.ObjectName;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.JCas;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.univnantes.lina.uima.engines.TreeTaggerStatistics;
+import fr.univnantes.lina.uima.engines.TreeTaggerWrapper;
+
+public class MetricsSpec {
+
+	TreeTaggerStatistics statistics;
+
+	@Before
+	public void setUp() throws Exception {
+		statistics = TreeTaggerStatistics.getInstance();
+		statistics.reset();
+	}
+
+	private static List<JCas> tag(AnalysisEngine engine, String... texts) throws Exception {
+		List<JCas> cases = new ArrayList<JCas>();
+		for (String text : texts) {
+			cases.add(FakeTreeTagger.createCas(text));
+		}
+		FakeTreeTagger.getAnnotator(engine).process(cases);
+		return cases;
+	}
+
+	@Test
+	public void testSkippedDocumentsAreNotCountedAsProcessed() throws Exception {
+		AnalysisEngine engine = FakeTreeTagger.createEngine(true, TreeTaggerWrapper.PARAM_BATCH_SIZE, 1);
+		try {
+			tag(engine, "the cat", "the die", "a dog");
+			assertThat(statistics.getDocuments()).isEqualTo(2);
+			assertThat(statistics.getSkippedDocuments()).isEqualTo(1);
+			assertThat(statistics.getFailedDocuments()).isEqualTo(0);
+		} finally {
+			engine.destroy();
+		}
+	}
+
+	@Test
+	public void testOnlyTheFailedBatchIsCountedAsFailed() throws Exception {
+		AnalysisEngine engine = FakeTreeTagger.createEngine(true,
+				TreeTaggerWrapper.PARAM_BATCH_SIZE, 2,
+				TreeTaggerWrapper.PARAM_FAILURE_POLICY, "fail");
+		try {
+			tag(engine, "the cat", "is on", "a die", "this dog", "sleeps .");
+			fail("The dead process was not reported");
+		} catch (AnalysisEngineProcessException e) {
+			assertThat(statistics.getDocuments()).isEqualTo(2);
+			assertThat(statistics.getFailedDocuments()).isEqualTo(2);
+			assertThat(statistics.getSkippedDocuments()).isEqualTo(0);
+		} finally {
+			engine.destroy();
+		}
+	}
+
+	@Test
+	public void testMBeanIsUnregisteredWithTheLastAnnotator() throws Exception {
+		ObjectName name = new ObjectName(TreeTaggerStatistics.OBJECT_NAME);
+		AnalysisEngine first = FakeTreeTagger.createEngine(true);
+		AnalysisEngine second = FakeTreeTagger.createEngine(true);
+		assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(name)).isTrue();
+		first.destroy();
+		assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(name)).isTrue();
+		second.destroy();
+		assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(name)).isFalse();
+		assertThat(statistics.isRegistered()).isFalse();
+	}
+
+}
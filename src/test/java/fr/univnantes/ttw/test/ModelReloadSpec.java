@@ -0,0 +1,97 @@
+package fr.univnantes.ttw.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.jcas.JCas;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fr.univnantes.lina.uima.engines.TreeTaggerWrapper;
+import fr.univnantes.lina.uima.models.TreeTaggerParameter;
+
+public class ModelReloadSpec {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	File parameterFile;
+
+	@Before
+	public void setUp() throws Exception {
+		parameterFile = folder.newFile("model.xml");
+		use("a.par");
+	}
+
+	private void use(String model) throws Exception {
+		File file = new File(folder.getRoot(), model);
+		file.createNewFile();
+		FakeTreeTagger.writeParameterFile(parameterFile, "file", file.getPath(), "encoding", "utf-8");
+	}
+
+	private static List<String> tag(AnalysisEngine engine) throws Exception {
+		JCas cas = FakeTreeTagger.createCas("the model");
+		engine.process(cas);
+		return FakeTreeTagger.getTokens(cas);
+	}
+
+	@Test
+	public void testReloadedModelTagsTheNextDocuments() throws Exception {
+		AnalysisEngine engine = FakeTreeTagger.createEngine(parameterFile, true);
+		try {
+			TreeTaggerParameter parameter = (TreeTaggerParameter) engine.getUimaContext().getResourceObject(TreeTaggerParameter.KEY_TT_PARAMETER);
+			assertThat(tag(engine)).containsExactly("the/DT/the", "model/NN/a.par");
+			int version = parameter.getDescriptor().getVersion();
+			use("b.par");
+			assertThat(tag(engine)).containsExactly("the/DT/the", "model/NN/a.par");
+			parameter.reload();
+			assertThat(parameter.getDescriptor().getVersion()).isEqualTo(version + 1);
+			assertThat(tag(engine)).containsExactly("the/DT/the", "model/NN/b.par");
+		} finally {
+			engine.destroy();
+		}
+	}
+
+	@Test
+	public void testWatchedParameterFileIsReloadedWhenItChanges() throws Exception {
+		AnalysisEngine engine = FakeTreeTagger.createEngine(parameterFile, true,
+				TreeTaggerWrapper.PARAM_TT_PARAMETER_FILE, parameterFile.getPath(),
+				TreeTaggerWrapper.PARAM_WATCH_PARAMETER_FILE, true);
+		try {
+			assertThat(tag(engine)).containsExactly("the/DT/the", "model/NN/a.par");
+			use("b.par");
+			long deadline = System.currentTimeMillis() + 10000;
+			List<String> tokens = tag(engine);
+			while (!tokens.contains("model/NN/b.par") && System.currentTimeMillis() < deadline) {
+				Thread.sleep(100);
+				tokens = tag(engine);
+			}
+			assertThat(tokens).containsExactly("the/DT/the", "model/NN/b.par");
+		} finally {
+			engine.destroy();
+		}
+	}
+
+	@Test
+	public void testOverridingWithTheSameFileKeepsTheVersion() throws Exception {
+		AnalysisEngine engine = FakeTreeTagger.createEngine(parameterFile, true, TreeTaggerWrapper.PARAM_TT_PARAMETER_FILE, parameterFile.getPath());
+		TreeTaggerParameter parameter = (TreeTaggerParameter) engine.getUimaContext().getResourceObject(TreeTaggerParameter.KEY_TT_PARAMETER);
+		int version = parameter.getDescriptor().getVersion();
+		try {
+			parameter.override(parameterFile.getPath());
+			assertThat(parameter.getDescriptor().getVersion()).isEqualTo(version);
+			use("b.par");
+			parameter.override(parameterFile.getPath());
+			assertThat(parameter.getDescriptor().getVersion()).isEqualTo(version + 1);
+			assertThat(tag(engine)).containsExactly("the/DT/the", "model/NN/b.par");
+		} finally {
+			engine.destroy();
+		}
+	}
+
+}
@@ -0,0 +1,72 @@
+package fr.univnantes.ttw.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.jcas.JCas;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.univnantes.lina.uima.engines.TreeTaggerStatistics;
+import fr.univnantes.lina.uima.engines.TreeTaggerWrapper;
+
+public class ParallelChunksSpec {
+
+	@Before
+	public void setUp() throws Exception {
+		TreeTaggerStatistics.getInstance().reset();
+	}
+
+	private static JCas tag(AnalysisEngine engine, int size) throws Exception {
+		JCas cas = FakeTreeTagger.createCas();
+		FakeTreeTagger.fill(cas, size);
+		try {
+			engine.process(cas);
+		} finally {
+			engine.destroy();
+		}
+		return cas;
+	}
+
+	private static AnalysisEngine parallel(boolean update) throws Exception {
+		return FakeTreeTagger.createEngine(update,
+				TreeTaggerWrapper.PARAM_MAX_CHUNK_SIZE, 5,
+				TreeTaggerWrapper.PARAM_PARALLELISM, 3,
+				TreeTaggerWrapper.PARAM_POOL_SIZE, 3);
+	}
+
+	@Test
+	public void testChunksAreWrittenInDocumentOrder() throws Exception {
+		JCas expected = tag(FakeTreeTagger.createEngine(true), 43);
+		TreeTaggerStatistics.getInstance().reset();
+		JCas cas = tag(parallel(true), 43);
+		assertThat(FakeTreeTagger.getTokens(cas)).isEqualTo(FakeTreeTagger.getTokens(expected));
+		assertThat(FakeTreeTagger.getRoundTrips()).isEqualTo(9);
+	}
+
+	@Test
+	public void testProcessesAreBoundByThePoolSize() throws Exception {
+		JCas cas = tag(parallel(true), 200);
+		assertThat(FakeTreeTagger.getTokens(cas)).doesNotContain("the/null/null");
+		assertThat(TreeTaggerStatistics.getInstance().getSkippedDocuments()).isEqualTo(0);
+		assertThat(TreeTaggerStatistics.getInstance().getProcessStarts()).isBetween(1L, 3L);
+		assertThat(FakeTreeTagger.getRoundTrips()).isEqualTo(40);
+	}
+
+	@Test
+	public void testCreatedAnnotationsFollowTheTokens() throws Exception {
+		JCas expected = tag(FakeTreeTagger.createEngine(false), 43);
+		JCas cas = tag(parallel(false), 43);
+		assertThat(FakeTreeTagger.getValues(cas, FakeTreeTagger.TAG_TYPE)).isEqualTo(FakeTreeTagger.getValues(expected, FakeTreeTagger.TAG_TYPE));
+		assertThat(FakeTreeTagger.getValues(cas, FakeTreeTagger.LEMMA_TYPE)).isEqualTo(FakeTreeTagger.getValues(expected, FakeTreeTagger.LEMMA_TYPE));
+	}
+
+	@Test
+	public void testSingleChunkDocumentsAreTaggedOnTheCallingThread() throws Exception {
+		JCas cas = tag(parallel(true), 5);
+		assertThat(FakeTreeTagger.getTokens(cas)).hasSize(5);
+		assertThat(FakeTreeTagger.getRoundTrips()).isEqualTo(1);
+		assertThat(TreeTaggerStatistics.getInstance().getProcessStarts()).isEqualTo(1);
+	}
+
+}
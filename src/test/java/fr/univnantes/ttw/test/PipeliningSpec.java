@@ -0,0 +1,114 @@
+package fr.univnantes.ttw.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.jcas.JCas;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fr.univnantes.lina.uima.engines.TreeTaggerStatistics;
+import fr.univnantes.lina.uima.engines.TreeTaggerWrapper;
+
+public class PipeliningSpec {
+
+	private static final String[] TEXTS = { "the cat", "is on", "a mat .", "this dog", "sleeps under", "the table .", "42 ." };
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Before
+	public void setUp() throws Exception {
+		TreeTaggerStatistics.getInstance().reset();
+	}
+
+	private static AnalysisEngine pipelined(boolean update, Object... parameters) throws Exception {
+		List<Object> all = new ArrayList<Object>();
+		all.add(TreeTaggerWrapper.PARAM_BATCH_SIZE);
+		all.add(2);
+		all.add(TreeTaggerWrapper.PARAM_PIPELINE_WINDOW);
+		all.add(2);
+		for (Object parameter : parameters) {
+			all.add(parameter);
+		}
+		return FakeTreeTagger.createEngine(update, all.toArray());
+	}
+
+	private static List<JCas> tag(AnalysisEngine engine, String... texts) throws Exception {
+		List<JCas> cases = new ArrayList<JCas>();
+		for (String text : texts) {
+			cases.add(FakeTreeTagger.createCas(text));
+		}
+		FakeTreeTagger.getAnnotator(engine).process(cases);
+		return cases;
+	}
+
+	@Test
+	public void testPipelinedBatchesAreTaggedLikeSequentialOnes() throws Exception {
+		AnalysisEngine sequential = FakeTreeTagger.createEngine(true, TreeTaggerWrapper.PARAM_BATCH_SIZE, 2);
+		AnalysisEngine engine = pipelined(true);
+		try {
+			List<JCas> expected = tag(sequential, TEXTS);
+			TreeTaggerStatistics.getInstance().reset();
+			List<JCas> cases = tag(engine, TEXTS);
+			for (int i = 0; i < TEXTS.length; i++) {
+				assertThat(FakeTreeTagger.getTokens(cases.get(i))).as(TEXTS[i]).isEqualTo(FakeTreeTagger.getTokens(expected.get(i)));
+			}
+			assertThat(FakeTreeTagger.getTokens(cases.get(6))).containsExactly("42/CD/@card@", "./SENT/.");
+			assertThat(FakeTreeTagger.getRoundTrips()).isEqualTo(4);
+		} finally {
+			sequential.destroy();
+			engine.destroy();
+		}
+	}
+
+	@Test
+	public void testPipelinedAnnotationsAreCreatedInTheirOwnDocument() throws Exception {
+		AnalysisEngine engine = pipelined(false, TreeTaggerWrapper.PARAM_BULK_ANNOTATION_CREATION, true);
+		try {
+			List<JCas> cases = tag(engine, TEXTS);
+			assertThat(FakeTreeTagger.getValues(cases.get(0), FakeTreeTagger.TAG_TYPE)).containsExactly("the/DT", "cat/NN");
+			assertThat(FakeTreeTagger.getValues(cases.get(5), FakeTreeTagger.TAG_TYPE)).containsExactly("the/DT", "table/NN", "./SENT");
+			assertThat(FakeTreeTagger.getValues(cases.get(5), FakeTreeTagger.LEMMA_TYPE)).containsExactly("the/the", "table/xtable", "./.");
+		} finally {
+			engine.destroy();
+		}
+	}
+
+	@Test
+	public void testAFailedBatchLeavesTheOthersTagged() throws Exception {
+		AnalysisEngine engine = pipelined(true);
+		try {
+			List<JCas> cases = tag(engine, "the cat", "is on", "a die", "this dog", "sleeps .");
+			assertThat(FakeTreeTagger.getTokens(cases.get(1))).containsExactly("is/VBZ/be", "on/NN/xon");
+			assertThat(FakeTreeTagger.getTokens(cases.get(2))).containsExactly("a/null/null", "die/null/null");
+			assertThat(FakeTreeTagger.getTokens(cases.get(3))).containsExactly("this/null/null", "dog/null/null");
+			assertThat(FakeTreeTagger.getTokens(cases.get(4))).containsExactly("sleeps/NN/xsleeps", "./SENT/.");
+			assertThat(TreeTaggerStatistics.getInstance().getSkippedDocuments()).isEqualTo(2);
+		} finally {
+			engine.destroy();
+		}
+	}
+
+	@Test
+	public void testCachedDocumentsSkipThePipeline() throws Exception {
+		AnalysisEngine engine = pipelined(true, TreeTaggerWrapper.PARAM_DOCUMENT_CACHE_DIRECTORY, folder.newFolder("cache").getPath());
+		try {
+			List<JCas> expected = tag(engine, TEXTS);
+			assertThat(FakeTreeTagger.getRoundTrips()).isEqualTo(4);
+			List<JCas> cases = tag(engine, TEXTS);
+			assertThat(FakeTreeTagger.getRoundTrips()).isEqualTo(4);
+			for (int i = 0; i < TEXTS.length; i++) {
+				assertThat(FakeTreeTagger.getTokens(cases.get(i))).as(TEXTS[i]).isEqualTo(FakeTreeTagger.getTokens(expected.get(i)));
+			}
+		} finally {
+			engine.destroy();
+		}
+	}
+
+}
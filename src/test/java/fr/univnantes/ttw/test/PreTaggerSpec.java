@@ -0,0 +1,69 @@
+package fr.univnantes.ttw.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fr.univnantes.lina.uima.engines.PreTagger;
+import fr.univnantes.lina.uima.engines.TokenCache;
+
+public class PreTaggerSpec {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	PreTagger preTagger;
+
+	@Before
+	public void setUp() throws Exception {
+		File lexicon = folder.newFile("closed.lex");
+		Writer writer = new OutputStreamWriter(new FileOutputStream(lexicon), "UTF-8");
+		try {
+			writer.write("the\tDT the\nis\tVBZ be\tNNS is\n");
+		} finally {
+			writer.close();
+		}
+		preTagger = new PreTagger(new String[] { "[0-9]+([.,][0-9]+)?\tCD", "\\p{Punct}\tSENT\tpunct" }, lexicon);
+	}
+
+	@Test
+	public void testRulesMatchWholeTokens() {
+		TokenCache.Entry entry = preTagger.tag("3.14");
+		assertThat(entry.getTag()).isEqualTo("CD");
+		assertThat(entry.getLemma()).isEqualTo("3.14");
+		assertThat(preTagger.tag(".").getLemma()).isEqualTo("punct");
+		assertThat(preTagger.tag("3rd")).isNull();
+	}
+
+	@Test
+	public void testLexiconWordsGetTheirFirstAnalysis() {
+		TokenCache.Entry entry = preTagger.tag("is");
+		assertThat(entry.getTag()).isEqualTo("VBZ");
+		assertThat(entry.getLemma()).isEqualTo("be");
+		assertThat(preTagger.tag("cats")).isNull();
+	}
+
+	@Test
+	public void testTokensAreCountedPerRule() {
+		preTagger.tag("1");
+		preTagger.tag("2");
+		preTagger.tag("the");
+		preTagger.tag("cats");
+		assertThat(preTagger.getCounts().values()).containsExactly(2L, 0L, 1L);
+		assertThat(preTagger.getCount()).isEqualTo(3);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRulesNeedATag() throws Exception {
+		new PreTagger(new String[] { "[0-9]+" }, null);
+	}
+
+}
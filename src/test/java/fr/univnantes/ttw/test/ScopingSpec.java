@@ -0,0 +1,108 @@
+package fr.univnantes.ttw.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.jcas.JCas;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.univnantes.lina.uima.engines.TreeTaggerStatistics;
+import fr.univnantes.lina.uima.engines.TreeTaggerWrapper;
+
+public class ScopingSpec {
+
+	// the cat | is 42 | a dog .
+	private static final String TEXT = "the cat is 42 a dog .";
+
+	AnalysisEngine engine;
+
+	@Before
+	public void setUp() throws Exception {
+		engine = FakeTreeTagger.createEngine(true,
+				TreeTaggerWrapper.PARAM_INCLUDE_TYPES, new String[] { FakeTreeTagger.PARAGRAPH_TYPE },
+				TreeTaggerWrapper.PARAM_EXCLUDE_TYPES, new String[] { FakeTreeTagger.TABLE_TYPE });
+		TreeTaggerStatistics.getInstance().reset();
+	}
+
+	@After
+	public void tearDown() {
+		engine.destroy();
+	}
+
+	@Test
+	public void testOnlyIncludedRegionsAreTagged() throws Exception {
+		JCas cas = FakeTreeTagger.createCas(TEXT);
+		FakeTreeTagger.annotate(cas, FakeTreeTagger.PARAGRAPH_TYPE, 0, 7);
+		FakeTreeTagger.annotate(cas, FakeTreeTagger.PARAGRAPH_TYPE, 14, 21);
+		engine.process(cas);
+		assertThat(FakeTreeTagger.getTokens(cas)).containsExactly(
+				"the/DT/the", "cat/NN/xcat", "is/null/null", "42/null/null", "a/DT/a", "dog/NN/xdog", "./SENT/.");
+		assertThat(FakeTreeTagger.getRoundTrips()).isEqualTo(1);
+	}
+
+	@Test
+	public void testExcludedRegionsAreLeftUntagged() throws Exception {
+		JCas cas = FakeTreeTagger.createCas(TEXT);
+		FakeTreeTagger.annotate(cas, FakeTreeTagger.PARAGRAPH_TYPE, 0, 21);
+		FakeTreeTagger.annotate(cas, FakeTreeTagger.TABLE_TYPE, 8, 13);
+		engine.process(cas);
+		assertThat(FakeTreeTagger.getTokens(cas)).containsExactly(
+				"the/DT/the", "cat/NN/xcat", "is/null/null", "42/null/null", "a/DT/a", "dog/NN/xdog", "./SENT/.");
+	}
+
+	@Test
+	public void testOverlappingRegionsAreMerged() throws Exception {
+		JCas cas = FakeTreeTagger.createCas(TEXT);
+		FakeTreeTagger.annotate(cas, FakeTreeTagger.PARAGRAPH_TYPE, 0, 10);
+		FakeTreeTagger.annotate(cas, FakeTreeTagger.PARAGRAPH_TYPE, 4, 13);
+		engine.process(cas);
+		assertThat(FakeTreeTagger.getTokens(cas)).containsExactly(
+				"the/DT/the", "cat/NN/xcat", "is/VBZ/be", "42/CD/@card@", "a/null/null", "dog/null/null", "./null/null");
+	}
+
+	@Test
+	public void testRegionsSpanningOneTokenTagIt() throws Exception {
+		JCas cas = FakeTreeTagger.createCas(TEXT);
+		FakeTreeTagger.annotate(cas, FakeTreeTagger.PARAGRAPH_TYPE, 4, 7);
+		FakeTreeTagger.annotate(cas, FakeTreeTagger.PARAGRAPH_TYPE, 7, 10);
+		FakeTreeTagger.annotate(cas, FakeTreeTagger.PARAGRAPH_TYPE, 16, 19);
+		engine.process(cas);
+		assertThat(FakeTreeTagger.getTokens(cas)).containsExactly(
+				"the/null/null", "cat/NN/xcat", "is/VBZ/be", "42/null/null", "a/null/null", "dog/NN/xdog", "./null/null");
+	}
+
+	@Test
+	public void testTokensCrossingTheEndOfARegionAreLeftOut() throws Exception {
+		JCas cas = FakeTreeTagger.createCas(TEXT);
+		FakeTreeTagger.annotate(cas, FakeTreeTagger.PARAGRAPH_TYPE, 0, 5);
+		engine.process(cas);
+		assertThat(FakeTreeTagger.getTokens(cas)).startsWith("the/DT/the", "cat/null/null");
+	}
+
+	@Test
+	public void testDocumentsWithoutIncludedRegionsAreNotSent() throws Exception {
+		JCas cas = FakeTreeTagger.createCas(TEXT);
+		engine.process(cas);
+		assertThat(FakeTreeTagger.getTokens(cas)).containsOnly(
+				"the/null/null", "cat/null/null", "is/null/null", "42/null/null", "a/null/null", "dog/null/null", "./null/null");
+		assertThat(FakeTreeTagger.getRoundTrips()).isEqualTo(0);
+	}
+
+	@Test
+	public void testExcludeTypesAloneTagTheRestOfTheDocument() throws Exception {
+		AnalysisEngine excluding = FakeTreeTagger.createEngine(true,
+				TreeTaggerWrapper.PARAM_EXCLUDE_TYPES, new String[] { FakeTreeTagger.TABLE_TYPE });
+		try {
+			JCas cas = FakeTreeTagger.createCas(TEXT);
+			FakeTreeTagger.annotate(cas, FakeTreeTagger.TABLE_TYPE, 0, 7);
+			excluding.process(cas);
+			assertThat(FakeTreeTagger.getTokens(cas)).containsExactly(
+					"the/null/null", "cat/null/null", "is/VBZ/be", "42/CD/@card@", "a/DT/a", "dog/NN/xdog", "./SENT/.");
+		} finally {
+			excluding.destroy();
+		}
+	}
+
+}
@@ -0,0 +1,80 @@
+package fr.univnantes.ttw.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fr.univnantes.lina.uima.engines.TreeTaggerWrapper;
+
+public class StartupModeSpec {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	File missingModel;
+	File unknownEncoding;
+
+	@Before
+	public void setUp() throws Exception {
+		missingModel = FakeTreeTagger.writeParameterFile(folder.newFile("missing.xml"), "file", "missing.par", "encoding", "utf-8");
+		unknownEncoding = FakeTreeTagger.writeParameterFile(folder.newFile("unknown.xml"), "file", "english.par", "encoding", "no-such-encoding");
+	}
+
+	private static AnalysisEngine createEngine(File parameterFile, String mode) throws Exception {
+		return FakeTreeTagger.createEngine(parameterFile, true, TreeTaggerWrapper.PARAM_STARTUP_MODE, mode);
+	}
+
+	@Test
+	public void testLazyStartupDefersTheModelToTheFirstDocument() throws Exception {
+		AnalysisEngine engine = createEngine(missingModel, "lazy");
+		try {
+			engine.process(FakeTreeTagger.createCas("the cat"));
+			fail("The missing model was not reported");
+		} catch (AnalysisEngineProcessException e) {
+			// the model is resolved by the first document
+		} finally {
+			engine.destroy();
+		}
+	}
+
+	@Test(expected = ResourceInitializationException.class)
+	public void testDefaultStartupResolvesTheModel() throws Exception {
+		createEngine(missingModel, "default");
+	}
+
+	@Test(expected = ResourceInitializationException.class)
+	public void testEagerStartupChecksTheEncoding() throws Exception {
+		createEngine(unknownEncoding, "eager");
+	}
+
+	@Test(expected = ResourceInitializationException.class)
+	public void testUnknownStartupModesAreRejected() throws Exception {
+		createEngine(new File(FakeTreeTagger.getHome(), "english.xml"), "early");
+	}
+
+	@Test
+	public void testEveryModeTagsTheSameWay() throws Exception {
+		for (String mode : new String[] { "lazy", "default", "eager" }) {
+			AnalysisEngine engine = createEngine(new File(FakeTreeTagger.getHome(), "english.xml"), mode);
+			try {
+				JCas cas = FakeTreeTagger.createCas("the cat is 42 .");
+				engine.process(cas);
+				assertThat(FakeTreeTagger.getTokens(cas)).as(mode).containsExactly(
+						"the/DT/the", "cat/NN/xcat", "is/VBZ/be", "42/CD/@card@", "./SENT/.");
+			} finally {
+				engine.destroy();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+package fr.univnantes.ttw.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fr.univnantes.lina.uima.engines.TaggingOutput;
+
+public class TaggingOutputSpec {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = new File(folder.getRoot(), "tagging.bin");
+		TaggingOutput output = TaggingOutput.open(file);
+		output.write("doc1", new int[] { 0, 4, 8 }, new int[] { 3, 7, 9 }, new String[] { "DT", "NN", "SENT" }, new String[] { "the", "cat", "." });
+		output.write(null, new int[] { 0, 2 }, new int[] { 1, 5 }, new String[] { "DT", "NN" }, new String[] { null, "dog" });
+		output.close();
+	}
+
+	@Test
+	public void testDocumentsAreReadBackInOrder() throws Exception {
+		TaggingOutput.Reader reader = new TaggingOutput.Reader(file);
+		try {
+			TaggingOutput.Document first = reader.next();
+			assertThat(first.getId()).isEqualTo("doc1");
+			assertThat(first.size()).isEqualTo(3);
+			assertThat(first.getBegin(2)).isEqualTo(8);
+			assertThat(first.getEnd(2)).isEqualTo(9);
+			assertThat(first.getTag(1)).isEqualTo("NN");
+			assertThat(first.getLemma(1)).isEqualTo("cat");
+			TaggingOutput.Document second = reader.next();
+			assertThat(second.getId()).isEmpty();
+			assertThat(second.getBegin(1)).isEqualTo(2);
+			assertThat(second.getEnd(1)).isEqualTo(5);
+			assertThat(second.getTag(0)).isEqualTo("DT");
+			assertThat(second.getLemma(0)).isNull();
+			assertThat(second.getLemma(1)).isEqualTo("dog");
+			assertThat(reader.hasNext()).isFalse();
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testAnIncompleteLastDocumentIsIgnored() throws Exception {
+		RandomAccessFile data = new RandomAccessFile(file, "rw");
+		try {
+			data.setLength(data.length() - 3);
+		} finally {
+			data.close();
+		}
+		TaggingOutput.Reader reader = new TaggingOutput.Reader(file);
+		try {
+			assertThat(reader.next().getId()).isEqualTo("doc1");
+			assertThat(reader.hasNext()).isFalse();
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testSharedOutputIsClosedByTheLastUserThenStartedAgain() throws Exception {
+		TaggingOutput first = TaggingOutput.open(file);
+		TaggingOutput second = TaggingOutput.open(file);
+		assertThat(second).isSameAs(first);
+		first.write("doc2", new int[] { 0 }, new int[] { 1 }, new String[] { "NN" }, new String[] { "a" });
+		first.close();
+		second.write("doc3", new int[] { 0 }, new int[] { 1 }, new String[] { "NN" }, new String[] { "b" });
+		second.close();
+		TaggingOutput.Reader reader = new TaggingOutput.Reader(file);
+		try {
+			assertThat(reader.next().getId()).isEqualTo("doc2");
+			assertThat(reader.next().getId()).isEqualTo("doc3");
+			assertThat(reader.hasNext()).isFalse();
+		} finally {
+			reader.close();
+		}
+		TaggingOutput third = TaggingOutput.open(file);
+		assertThat(third).isNotSameAs(first);
+		third.close();
+		reader = new TaggingOutput.Reader(file);
+		try {
+			assertThat(reader.hasNext()).isFalse();
+		} finally {
+			reader.close();
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+package fr.univnantes.ttw.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.jcas.JCas;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.univnantes.lina.uima.engines.TokenCache;
+import fr.univnantes.lina.uima.engines.TreeTaggerWrapper;
+
+public class TokenCacheSpec {
+
+	TokenCache cache;
+
+	@Before
+	public void setUp() {
+		cache = new TokenCache(2, Arrays.asList("DT", "IN"));
+	}
+
+	@Test
+	public void testClosedClassFormsAreCached() {
+		cache.put("the", "DT", "the");
+		assertThat(cache.get("the").getTag()).isEqualTo("DT");
+		assertThat(cache.get("the").getLemma()).isEqualTo("the");
+	}
+
+	@Test
+	public void testOpenClassTagsAreNotCached() {
+		cache.put("cat", "NN", "cat");
+		assertThat(cache.get("cat")).isNull();
+	}
+
+	@Test
+	public void testTheFirstResultOfAFormIsKept() {
+		cache.put("that", "DT", "that");
+		cache.put("that", "IN", "that");
+		assertThat(cache.get("that").getTag()).isEqualTo("DT");
+	}
+
+	@Test
+	public void testNothingIsAddedOnceFull() {
+		cache.put("the", "DT", "the");
+		cache.put("a", "DT", "a");
+		cache.put("of", "IN", "of");
+		assertThat(cache.get("the")).isNotNull();
+		assertThat(cache.get("a")).isNotNull();
+		assertThat(cache.get("of")).isNull();
+	}
+
+	@Test
+	public void testCachedFormsAreStillTaggedInContext() throws Exception {
+		AnalysisEngine cached = FakeTreeTagger.createEngine(true,
+				TreeTaggerWrapper.PARAM_TOKEN_CACHE_SIZE, 10,
+				TreeTaggerWrapper.PARAM_TOKEN_CACHE_TAGS, new String[] { "DT", "VBZ" });
+		AnalysisEngine uncached = FakeTreeTagger.createEngine(true);
+		try {
+			for (String text : new String[] { "the cat is a cat .", "this is the dog 42 .", "the cat is the dog ." }) {
+				JCas expected = FakeTreeTagger.createCas(text);
+				uncached.process(expected);
+				JCas cas = FakeTreeTagger.createCas(text);
+				cached.process(cas);
+				assertThat(FakeTreeTagger.getTokens(cas)).as(text).isEqualTo(FakeTreeTagger.getTokens(expected));
+			}
+			TokenCache cache = FakeTreeTagger.getAnnotator(cached).getTokenCache();
+			// the, is and a are cached by the first document, this by the second
+			assertThat(cache.getHits()).isEqualTo(0 + 2 + 3);
+			assertThat(cache.getMisses()).isEqualTo(6 + 4 + 3);
+		} finally {
+			cached.destroy();
+			uncached.destroy();
+		}
+	}
+}
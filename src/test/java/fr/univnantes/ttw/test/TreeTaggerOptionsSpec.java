@@ -0,0 +1,55 @@
+package fr.univnantes.ttw.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+import fr.univnantes.lina.uima.models.TreeTaggerOptions;
+
+public class TreeTaggerOptionsSpec {
+
+	@Test
+	public void testDefaultOptionsAreKept() {
+		assertThat(TreeTaggerOptions.parse(TreeTaggerOptions.DEFAULT).toString()).isEqualTo(TreeTaggerOptions.DEFAULT);
+	}
+
+	@Test
+	public void testOptionsTt4jReadsAreAdded() {
+		TreeTaggerOptions options = TreeTaggerOptions.parse("-quiet  -token");
+		assertThat(options.toArray()).containsExactly("-quiet", "-token", "-sgml", "-lemma");
+	}
+
+	@Test
+	public void testOptionValues() {
+		TreeTaggerOptions options = TreeTaggerOptions.parse("-eps 0.001 -cap-heuristics");
+		assertThat(options.getValue("-eps")).isEqualTo("0.001");
+		assertThat(options.has("-cap-heuristics")).isTrue();
+		assertThat(options.getValue("-beam")).isNull();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownOptionsAreRejected() {
+		TreeTaggerOptions.parse("-quiet -foo");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOutputChangingOptionsAreRejected() {
+		TreeTaggerOptions.parse("-token -lemma -prob");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNumbersAreValidated() {
+		TreeTaggerOptions.parse("-eps small");
+	}
+
+	@Test
+	public void testRepeatedFlagsAreKeptOnce() {
+		assertThat(TreeTaggerOptions.parse("-quiet -token -quiet").toString()).isEqualTo("-quiet -token -sgml -lemma");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRepeatedValuesAreRejected() {
+		TreeTaggerOptions.parse("-eps 0.1 -eps 0.2");
+	}
+
+}
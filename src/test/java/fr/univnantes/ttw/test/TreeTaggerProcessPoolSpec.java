@@ -0,0 +1,137 @@
+package fr.univnantes.ttw.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeoutException;
+
+import org.annolab.tt4j.TreeTaggerWrapper;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fr.univnantes.lina.uima.models.TreeTaggerOptions;
+import fr.univnantes.lina.uima.models.TreeTaggerParameter;
+import fr.univnantes.lina.uima.models.TreeTaggerProcessPool;
+
+public class TreeTaggerProcessPoolSpec {
+
+	/*
+	 * Starts no process
+	 */
+	public static class StubWrapper extends TreeTaggerWrapper<Annotation> {
+
+		boolean destroyed;
+
+		@Override
+		public void setModel(String model) {
+			// nothing to resolve
+		}
+
+		@Override
+		public void destroy() {
+			this.destroyed = true;
+		}
+	}
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	TreeTaggerProcessPool pool;
+	TreeTaggerParameter.Model model;
+	TreeTaggerOptions options;
+
+	@Before
+	public void setUp() throws Exception {
+		File parameter = folder.newFile("english.xml");
+		Writer writer = new OutputStreamWriter(new FileOutputStream(parameter), "UTF-8");
+		try {
+			writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+					+ "<!DOCTYPE properties SYSTEM \"http://java.sun.com/dtd/properties.dtd\">\n"
+					+ "<properties><entry key=\"file\">english.par</entry><entry key=\"encoding\">utf-8</entry></properties>\n");
+		} finally {
+			writer.close();
+		}
+		TreeTaggerParameter ttParameter = new TreeTaggerParameter();
+		ttParameter.override(parameter.getPath());
+		model = ttParameter.getDescriptor();
+		options = TreeTaggerOptions.parse(TreeTaggerOptions.DEFAULT);
+		pool = new TreeTaggerProcessPool();
+	}
+
+	private StubWrapper borrow(long timeout) throws Exception {
+		return borrow(1, timeout);
+	}
+
+	private StubWrapper borrow(int size, long timeout) throws Exception {
+		return (StubWrapper) pool.borrow(model, options, StubWrapper.class, null, size, timeout);
+	}
+
+	@Test
+	public void testRetiringASharedModelKeepsItsProcesses() throws Exception {
+		pool.retain(model, options, StubWrapper.class, null);
+		pool.retain(model, options, StubWrapper.class, null);
+		StubWrapper wrapper = borrow(100);
+		pool.release(wrapper);
+		pool.retire(model, options, StubWrapper.class, null);
+		assertThat(borrow(100)).isSameAs(wrapper);
+		assertThat(wrapper.destroyed).isFalse();
+	}
+
+	@Test
+	public void testRetiringTheLastUseStopsIdleProcesses() throws Exception {
+		pool.retain(model, options, StubWrapper.class, null);
+		StubWrapper wrapper = borrow(100);
+		pool.release(wrapper);
+		pool.retire(model, options, StubWrapper.class, null);
+		assertThat(wrapper.destroyed).isTrue();
+	}
+
+	@Test
+	public void testProcessesInUseStopWhenReleased() throws Exception {
+		pool.retain(model, options, StubWrapper.class, null);
+		StubWrapper wrapper = borrow(100);
+		pool.retire(model, options, StubWrapper.class, null);
+		assertThat(wrapper.destroyed).isFalse();
+		pool.release(wrapper);
+		assertThat(wrapper.destroyed).isTrue();
+	}
+
+	@Test
+	public void testBoundHoldsWhenAModelIsRetainedAgain() throws Exception {
+		pool.retain(model, options, StubWrapper.class, null);
+		StubWrapper wrapper = borrow(100);
+		pool.retire(model, options, StubWrapper.class, null);
+		pool.retain(model, options, StubWrapper.class, null);
+		try {
+			borrow(50);
+			throw new AssertionError("A second process was started");
+		} catch (TimeoutException e) {
+			// the process in use still holds the only permit
+		}
+		pool.release(wrapper);
+		assertThat(wrapper.destroyed).isFalse();
+		assertThat(borrow(100)).isSameAs(wrapper);
+	}
+
+	@Test
+	public void testLargestSizeBoundsASharedModel() throws Exception {
+		StubWrapper first = borrow(1, 100);
+		StubWrapper second = borrow(2, 100);
+		assertThat(second).isNotSameAs(first);
+		try {
+			borrow(1, 50);
+			throw new AssertionError("A third process was started");
+		} catch (TimeoutException e) {
+			// the smaller size does not shrink the bound
+		}
+		pool.release(first);
+		pool.release(second);
+	}
+
+}
@@ -0,0 +1,50 @@
+package fr.univnantes.ttw.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.univnantes.lina.uima.models.TreeTaggerTagset;
+
+public class TreeTaggerTagsetSpec {
+
+	TreeTaggerTagset tagset;
+
+	@Before
+	public void setUp() {
+		tagset = new TreeTaggerTagset(Arrays.asList("NN", "DT", "VBZ", "DT"));
+	}
+
+	@Test
+	public void testRegisteredTagsGetDenseIdsInOrder() {
+		assertThat(tagset.getId("NN")).isEqualTo(0);
+		assertThat(tagset.getId("DT")).isEqualTo(1);
+		assertThat(tagset.getId("VBZ")).isEqualTo(2);
+		assertThat(tagset.size()).isEqualTo(3);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownTagsAreRejected() {
+		tagset.getId("SENT");
+	}
+
+	@Test
+	public void testTagsetsDoNotShareIds() {
+		TreeTaggerTagset other = new TreeTaggerTagset(Arrays.asList("DT", "NN"));
+		assertThat(other.getId("NN")).isEqualTo(1);
+		assertThat(tagset.getId("NN")).isEqualTo(0);
+		assertThat(tagset.contains("SENT")).isFalse();
+		assertThat(tagset.getTags()).containsExactly("NN", "DT", "VBZ");
+	}
+
+	@Test
+	public void testIdsResolveBackToTags() {
+		assertThat(tagset.getTag(tagset.getId("DT"))).isEqualTo("DT");
+		assertThat(tagset.getId(null)).isEqualTo(TreeTaggerTagset.NO_TAG);
+		assertThat(tagset.getTag(TreeTaggerTagset.NO_TAG)).isNull();
+	}
+
+}